@@ -13,6 +13,10 @@ import game.map.*;
 import game.modules.Graphics;
 import game.modules.MouseEvents;
 import game.modules.WindowEvents;
+import game.modules.pathfinding.FirstMoves;
+import game.modules.pathfinding.PathScheduler;
+import game.modules.pathfinding.PathService;
+import game.modules.pathfinding.Reservations;
 import game.entities.*;
 
 // Static class Game
@@ -121,7 +125,11 @@ public class Game
         frame.setVisible(true);
         
         // TODO: make this dynamic (FileChooser)
-        map = new Map("maps/default.xml");
+        String mapFile = "maps/default.xml";
+        map = new Map(mapFile);
+        
+        // Load (or start building) the first-move table saved alongside the map
+        FirstMoves.get().open(mapFile);
         
         // Start the game loop
         Game.loop();
@@ -170,6 +178,12 @@ public class Game
                     // Process mouse events
                     MouseEvents.processList();
                     
+                    // Frame boundary: hand out paths solved off the game thread and start on new ones
+                    PathService.get().frame();
+                    
+                    // Move the clock cooperative paths are timed by on (see Reservations)
+                    if (!paused && !waiting) Reservations.get().advance(delta);
+                    
                     // What to draw if the game is paused
                     if (paused)
                     {
@@ -245,6 +259,9 @@ public class Game
 	                    entity.draw(g);
 	                }
 	                
+                    // Spend this frame's pathfinding budget on every search still building a path
+                    if (!paused && !waiting) PathScheduler.get().run();
+                    
                     // Remove any entities that need to be removed here
                     if (!removeList.isEmpty())
                     {
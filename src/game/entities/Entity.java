@@ -2,6 +2,7 @@ package game.entities;
 
 import game.map.Grid;
 import game.Game;
+import game.modules.pathfinding.PathService;
 import game.sprites.*;
 
 import java.awt.Color;
@@ -180,6 +181,9 @@ public abstract class Entity
     // Any cleanup activities should be done here
     public void destroy()
     {        
+        // Stop any path searches still running for us
+        PathService.get().cancel(this);
+        
         // Remove the entity from the game's entity list
     	Game.removeEntity(this);
     }
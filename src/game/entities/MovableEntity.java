@@ -5,6 +5,23 @@ import game.map.Grid;
 import game.map.Cell;
 import game.modules.Graphics;
 import game.modules.pathfinding.AStar;
+import game.modules.pathfinding.ArrayAStar;
+import game.modules.pathfinding.BidirectionalAStar;
+import game.modules.pathfinding.CachingPathFinder;
+import game.modules.pathfinding.CooperativeAStar;
+import game.modules.pathfinding.DStarLite;
+import game.modules.pathfinding.FirstMoveFollower;
+import game.modules.pathfinding.FlowFollower;
+import game.modules.pathfinding.HPAStar;
+import game.modules.pathfinding.JumpPointSearch;
+import game.modules.pathfinding.LRTAStar;
+import game.modules.pathfinding.NearestGoal;
+import game.modules.pathfinding.ParallelPathFinder;
+import game.modules.pathfinding.Path;
+import game.modules.pathfinding.PathFinder;
+import game.modules.pathfinding.PathScheduler;
+import game.modules.pathfinding.Reservations;
+import game.modules.pathfinding.ThetaStar;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
@@ -28,8 +45,14 @@ public class MovableEntity extends AnimatedEntity
     private Cell startLocation;
     private Cell goalLocation;
     
-    // The AStar pathfinding class
-    private AStar astar = new AStar(this);
+    // The goals to head for the nearest of in PathFinder.NEAREST mode (null = every goal on the map)
+    private Cell[] goals = null;
+    
+    // The pathfinding class (see setSearchMode)
+    private PathFinder astar = new CachingPathFinder(this, new AStar(this), PathFinder.ASTAR);
+    
+    // The number of steps the pathfinding class will take per loop
+    private int stepLimit = 0;
     
     // The turning radius of this entity
     //private int radius = 3;
@@ -41,7 +64,7 @@ public class MovableEntity extends AnimatedEntity
     
     // The current location we are on the generated path
     private Cell currentCell;
-    private int pathLocation  = 1;
+    private Path.Cursor cursor = null;
     private int movementState = WAITING;
 
     // Constructor
@@ -106,14 +129,125 @@ public class MovableEntity extends AnimatedEntity
     
     // Set the number of steps this entity will take per loop
     public void setStepLimit(int n) {
-    	astar.setStepLimit(n);
+    	astar.setStepLimit(stepLimit = n);
+    }
+    
+    // Set the goals to head for the nearest of in PathFinder.NEAREST mode (null = every goal on the map)
+    public void setGoals(Cell[] goals)
+    {
+    	this.goals = goals;
+    	
+    	if (astar instanceof NearestGoal) ((NearestGoal) astar).setGoals(goals);
+    }
+    
+    // Set the pathfinding engine this entity will use (PathFinder.ASTAR, PathFinder.ARRAY, PathFinder.JPS, PathFinder.HPA, PathFinder.DSTAR, PathFinder.FLOW, PathFinder.BIDIRECTIONAL, PathFinder.PARALLEL, PathFinder.THETA, PathFinder.LAZY_THETA, PathFinder.COOPERATIVE, PathFinder.FIRST_MOVE, PathFinder.NEAREST, PathFinder.LRTA)
+    public void setSearchMode(int mode)
+    {
+    	// Let go of the old engine
+    	PathScheduler.get().remove(astar);
+    	astar.dispose();
+    	
+    	switch (mode)
+    	{
+    		// Primitive-array A*
+    		case PathFinder.ARRAY:
+    			astar = new ArrayAStar(this);
+    			break;
+    			
+    		// Jump Point Search
+    		case PathFinder.JPS:
+    			astar = new JumpPointSearch(this);
+    			break;
+    			
+    		// Hierarchical A*
+    		case PathFinder.HPA:
+    			astar = new HPAStar(this);
+    			break;
+    			
+    		// D* Lite incremental replanning
+    		case PathFinder.DSTAR:
+    			astar = new DStarLite(this);
+    			break;
+    			
+    		// Follow the shared flow field for our goal
+    		case PathFinder.FLOW:
+    			astar = new FlowFollower(this);
+    			break;
+    			
+    		// Bidirectional A*
+    		case PathFinder.BIDIRECTIONAL:
+    			astar = new BidirectionalAStar(this);
+    			break;
+    			
+    		// A* on the path service's worker threads
+    		case PathFinder.PARALLEL:
+    			astar = new ParallelPathFinder(this);
+    			break;
+    			
+    		// Any-angle Theta*
+    		case PathFinder.THETA:
+    			astar = new ThetaStar(this, false);
+    			break;
+    			
+    		// Any-angle Lazy Theta*
+    		case PathFinder.LAZY_THETA:
+    			astar = new ThetaStar(this, true);
+    			break;
+    			
+    		// Windowed cooperative A* around the other entities
+    		case PathFinder.COOPERATIVE:
+    			astar = new CooperativeAStar(this);
+    			break;
+    			
+    		// Look the path up in the first-move table
+    		case PathFinder.FIRST_MOVE:
+    			astar = new FirstMoveFollower(this);
+    			break;
+    			
+    		// Head for the nearest of our goals
+    		case PathFinder.NEAREST:
+    			astar = new NearestGoal(this);
+    			((NearestGoal) astar).setGoals(goals);
+    			break;
+    			
+    		// Real-time search a lookahead at a time, learning as we go
+    		case PathFinder.LRTA:
+    			astar = new LRTAStar(this);
+    			break;
+    			
+    		// Node based A*
+    		default:
+    			astar = new AStar(this);
+    			break;
+    	}
+    	
+    	// Check the path cache before searching (D* Lite keeps repairing its own path, cooperative
+    	// paths depend on everyone else's reservations, the nearest goal isn't the goal the cache
+    	// is keyed by, and real-time paths only run to the edge of a lookahead, so none of them can share one)
+    	if ((mode != PathFinder.DSTAR) && (mode != PathFinder.COOPERATIVE) && (mode != PathFinder.NEAREST)
+    		&& (mode != PathFinder.LRTA)) astar = new CachingPathFinder(this, astar, mode);
+    	
+    	// Carry our step limit over to the new engine
+    	astar.setStepLimit(stepLimit);
     }
     
     // Start building a path for this entity
-    public void startMoving() {
+    public void startMoving()
+    {
+    	// Keep the search out of cells we are too big for
+    	astar.setUnitSize(getUnitSize());
     	astar.newPath(startLocation, goalLocation);
     }
     
+    // Return how many cells across this entity is (canMove counts the far edge of the
+    // bounding box, so a box exactly one cell wide already touches two cells)
+    public int getUnitSize()
+    {
+    	if (getSprite() == null) return 1;
+    	
+    	return ((Math.max(getWidth(), getHeight()) / Grid.getCellSize()) + 1);
+    }
+    
     /**
      * 
      * BOOLEAN OPERATIONS
@@ -176,6 +310,7 @@ public class MovableEntity extends AnimatedEntity
     	if (astar.pathExists() && (pathSize != astar.getPathSize()))
     	{
            	Cell first, second;
+           	Path route = astar.getPath();
            	Graphics2D g = (Graphics2D) path.getGraphics();
            	
             // Clear the old path so we can build a new one
@@ -185,13 +320,13 @@ public class MovableEntity extends AnimatedEntity
            	g.setColor(getColor());
            	
             // Store the current size of the path
-            pathSize = astar.getPathSize();
+            pathSize = route.size();
            	
            	// Loop through this entity's path and draw it
-           	for (int x = 1; x < astar.getPathSize(); x++)
+           	for (int x = 1; x < route.size(); x++)
            	{
-                first  = astar.getNode(x).getCell();
-                second = astar.getNode(x + 1).getCell();
+                first  = route.getCell(x - 1);
+                second = route.getCell(x);
                 
                 g.setColor(Color.gray);
                 
@@ -237,8 +372,20 @@ public class MovableEntity extends AnimatedEntity
         // If this unit is logical, execute logic as needed
         if (this.isLogical())
         {
-            // Build our path
-            astar.findPath();
+            // Build our path, or let the scheduler give us time for it
+            if (PathScheduler.isEnabled() && astar.isIncremental())
+            {
+            	if (astar.buildingPath()) PathScheduler.get().add(astar);
+            }
+            
+            else astar.findPath();
+            
+            // Our path was repaired from where we are now, start following it from the beginning
+            if (astar.pathRepaired())
+            {
+            	cursor = null;
+            	movementState = WAITING;
+            }
         }
     }
 
@@ -249,16 +396,19 @@ public class MovableEntity extends AnimatedEntity
     	// Reset our directional movements
         resetMovement();
     	
-    	// Make sure we have a path to move along
-    	if (astar.pathExists() && (pathLocation <= astar.getPathSize()))
+    	// Make sure we have a path to move along (only once it is settled, a best guess may still change under us)
+    	if (astar.pathExists() && astar.isCommitted() && walk(astar.getPath()).hasNext())
     	{	    	
 			// Which movementState are we in?
     		switch (movementState)
     		{
 	    		// We are waiting for the next move
 	    		case WAITING:
+	    			// Timed paths (see CooperativeAStar) say when we may set off for each waypoint
+	    			if (!cursor.isDue(Reservations.get().now())) return;
+	    			
 			        // Grab the next node we need to move to
-			    	currentCell = astar.getNode(pathLocation).getCell();
+			    	currentCell = cursor.peek();
 			    	
 			    	System.out.println("moving towards: " + currentCell.getGridLocation().toString());
 			    	
@@ -323,14 +473,11 @@ public class MovableEntity extends AnimatedEntity
             // Check to see if we have reached the point we were moving towards
             if (currentCell.getX() == getX() && currentCell.getY() == getY())
             {            	
-            	// See if we reached the goal	            	
-    			if (currentCell == goalLocation)
+            	// See if we reached the goal (or the end of a finished path to the nearest of several)	            	
+    			if ((currentCell == goalLocation) || reachedEnd())
     			{    				
     				// Change movementState to reached goal
     				movementState = REACHED_GOAL;
-    				
-			    	// Reset pathLocation
-			    	pathLocation = 1;
     			}
     			
     			// Otherwise, start working on the next point
@@ -340,12 +487,30 @@ public class MovableEntity extends AnimatedEntity
     				movementState = WAITING;
     				
     				// Advance our path location
-    				pathLocation++;
+    				cursor.advance();
     			}
             }
     	}
     }
 	
+    // Whether or not we are standing on the last waypoint of a finished path (which leads to a goal, if not always goalLocation)
+    private boolean reachedEnd()
+    {
+    	Path route = cursor.getPath();
+    	
+    	return (astar.pathIsFinished() && (currentCell == route.getCell(route.size() - 1)));
+    }
+    
+    // Return our cursor along path, keeping our place if it is a newer version of the path we were
+    // walking (a partial path that has grown since), or starting at the beginning if we had none
+    private Path.Cursor walk(Path path)
+    {
+    	if (cursor == null) cursor = path.cursor();
+    	else if (cursor.getPath() != path) cursor.follow(path);
+    	
+    	return cursor;
+    }
+	
 	@Override
 	public void destroy()
 	{
@@ -353,6 +518,10 @@ public class MovableEntity extends AnimatedEntity
 	    //Graphics2D g = (Graphics2D) path.getGraphics();
 	    //Graphics.clear(g);
 	    
+	    // Let go of anything our pathfinding engine is holding on to
+	    PathScheduler.get().remove(astar);
+	    astar.dispose();
+	    
         // Pass this call to the parent class
         super.destroy();
 	}
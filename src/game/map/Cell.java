@@ -13,6 +13,11 @@ public class Cell
     private boolean isGoal 		= false;	// Whether or not this cell is a goal point
     private boolean isSpawn 	= false;	// Whether or not this cell is a spawn point
     private boolean isPlayable 	= false;	// Whether or not entities can enter this cell
+    
+    // The cost of crossing a cell of ordinary ground (straight, the same as PathFinder.STRAIGHT)
+    public static final int DEFAULT_COST = 10;
+    
+    private int cost = DEFAULT_COST;		// The cost of crossing this cell (higher for mud, lower for roads)
   
     // Constructor, creates a new cell for the grid
     public Cell(int r, int c)
@@ -42,19 +47,43 @@ public class Cell
         return isPlayable;
     }
     
+    // Returns the cost of crossing the cell
+    public int getCost() {
+        return cost;
+    }
+    
     // Set whether or not the cell is a spawn point
     public void setSpawn(boolean bool) {
         isSpawn = bool;
     }
     
     // Set whether or not the cell is an exit point
-    public void setGoal(boolean bool) {
+    public void setGoal(boolean bool)
+    {
+        if (isGoal == bool) return;
+        
         isGoal = bool;
+        Grid.goalChanged(this);
     }
     
     // Set whether or not the cell is playable
-    public void setPlayable(boolean bool) {
+    public void setPlayable(boolean bool)
+    {
+        if (isPlayable == bool) return;
+        
         isPlayable = bool;
+        Grid.cellChanged(this);
+    }
+    
+    // Set the cost of crossing the cell (at least 1)
+    public void setCost(int cost)
+    {
+        cost = Math.max(1, cost);
+        
+        if (this.cost == cost) return;
+        
+        this.cost = cost;
+        Grid.costChanged(this);
     }
     
     // Toggle whether or not the cell is a spawn point
@@ -63,13 +92,17 @@ public class Cell
     }
     
     // Toggle whether or not the cell is an exit point
-    public void toggleGoal() {
+    public void toggleGoal()
+    {
         isGoal = !isGoal;
+        Grid.goalChanged(this);
     }
     
     // Toggle whether or not the cell is playable
-    public void togglePlayable() {
+    public void togglePlayable()
+    {
         isPlayable = !isPlayable;
+        Grid.cellChanged(this);
     }
     
     // Returns rectangular bounds
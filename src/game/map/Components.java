@@ -0,0 +1,363 @@
+package game.map;
+
+import java.util.Arrays;
+
+// Connected-component labels over the playable cells of the Grid, using the
+// same 8-connected moves as the searches. Every playable cell carries a label,
+// and labels that have been joined are merged with a union-find, so two cells
+// are connected when their labels have the same root.
+//
+// A cell becoming playable just joins the labels around it. A cell becoming
+// blocked can only split its component if the playable cells around it stop
+// touching each other; if they do, one flood fill per piece is grown in turns
+// and the pieces that finish first (the small ones) get fresh labels, so we
+// never relabel more than the smaller side of a split.
+final class Components
+{
+	private static final int BLOCKED = -1;			// The label of a cell that isn't playable
+	private static final int MAX_PIECES = 4;		// The most pieces the cells around one cell can fall into
+
+	// The row and column offsets of the 8 cells around a cell, in order around the ring
+	private static final int[] DR = { -1, -1,  0,  1,  1,  1,  0, -1 };
+	private static final int[] DC = {  0,  1,  1,  1,  0, -1, -1, -1 };
+
+	private Object builtFor = null;					// The Grid cell list the labels were built for
+
+	private int[] label = null;						// The label of each cell (BLOCKED if it isn't playable)
+	private int[] parent = null;					// The union-find parent of each label
+	private int count = 0;							// The number of labels handed out
+
+	private int[][] queues = null;					// The cells each flood fill has reached (used by split)
+	private int[] mark = null;						// The split each cell was last reached by
+	private byte[] owner = null;					// Which flood fill reached each cell
+	private int stamp = 0;							// The current split
+
+    // Whether or not cell index b can be reached from cell index a
+    boolean connected(int a, int b)
+    {
+    	update();
+
+    	return ((label[a] != BLOCKED) && (label[b] != BLOCKED) && (find(label[a]) == find(label[b])));
+    }
+
+    // Return the component of cell index (-1 if it isn't playable)
+    int component(int index)
+    {
+    	update();
+
+    	return ((label[index] == BLOCKED) ? BLOCKED : find(label[index]));
+    }
+
+    // A cell changed whether or not it is playable
+    void cellChanged(Cell cell)
+    {
+    	// Nothing built yet, everything gets labelled on first use
+    	if (builtFor != Grid.getCells()) return;
+
+    	// Too many labels handed out, start again from scratch
+    	if (count > 4 * label.length)
+    	{
+    		build();
+    		return;
+    	}
+
+    	if (cell.isPlayable()) add(cell.getR(), cell.getC());
+    	else remove(cell.getR(), cell.getC());
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Label everything if a new map was loaded
+    private void update()
+    {
+    	if (builtFor != Grid.getCells()) build();
+    }
+
+    // Label every cell with a flood fill
+    private void build()
+    {
+    	int size = Grid.getSize();
+    	int[] queue = new int[size];
+    	int head, tail, current, r, c, nr, nc, neighbor;
+
+    	builtFor = Grid.getCells();
+    	label = new int[size];
+    	parent = new int[Math.max(16, size / 4)];
+    	count = 0;
+    	queues = null;
+    	mark = null;
+    	owner = null;
+
+    	Arrays.fill(label, BLOCKED);
+
+    	for (int start = 0; start < size; start++)
+    	{
+    		// Already labelled, or not playable
+    		if ((label[start] != BLOCKED) || !Grid.isPlayable(Grid.rowFromIndex(start), Grid.columnFromIndex(start))) continue;
+
+    		int id = newLabel();
+
+    		label[start] = id;
+    		queue[0] = start;
+    		head = 0;
+    		tail = 1;
+
+    		// Spread the label to everything we can reach
+    		while (head < tail)
+    		{
+    			current = queue[head++];
+    			r = Grid.rowFromIndex(current);
+    			c = Grid.columnFromIndex(current);
+
+    			for (int d = 0; d < DR.length; d++)
+    			{
+    				nr = r + DR[d];
+    				nc = c + DC[d];
+
+    				if (!Grid.isPlayable(nr, nc) || (label[neighbor = Grid.indexOf(nr, nc)] != BLOCKED)) continue;
+
+    				label[neighbor] = id;
+    				queue[tail++] = neighbor;
+    			}
+    		}
+    	}
+    }
+
+    // Hand out a new label
+    private int newLabel()
+    {
+    	if (count == parent.length) parent = Arrays.copyOf(parent, count * 2);
+
+    	parent[count] = count;
+
+    	return count++;
+    }
+
+    // Return the root of label id
+    private int find(int id)
+    {
+    	while (parent[id] != id)
+    	{
+    		// Halve the path as we go
+    		parent[id] = parent[parent[id]];
+    		id = parent[id];
+    	}
+
+    	return id;
+    }
+
+    // Join the components of labels a and b
+    private void union(int a, int b)
+    {
+    	a = find(a);
+    	b = find(b);
+
+    	// Keep the older label as the root
+    	if (a < b) parent[b] = a;
+    	else if (b < a) parent[a] = b;
+    }
+
+    // Cell (r, c) became playable: it joins every component around it
+    private void add(int r, int c)
+    {
+    	int index = Grid.indexOf(r, c);
+    	int id = newLabel();
+
+    	label[index] = id;
+
+    	for (int d = 0; d < DR.length; d++)
+    		if (Grid.isPlayable(r + DR[d], c + DC[d])) union(id, label[Grid.indexOf(r + DR[d], c + DC[d])]);
+    }
+
+    // Cell (r, c) became blocked: its component may fall into pieces
+    private void remove(int r, int c)
+    {
+    	int[] seeds = new int[MAX_PIECES];
+    	int[] group = new int[DR.length];
+    	int pieces = 0;
+
+    	label[Grid.indexOf(r, c)] = BLOCKED;
+
+    	// Group the playable cells around us by whether they touch each other
+    	for (int d = 0; d < DR.length; d++)
+    	{
+    		group[d] = -1;
+
+    		if (!Grid.isPlayable(r + DR[d], c + DC[d])) continue;
+
+    		// Join the group of any earlier neighbor it touches
+    		for (int e = 0; e < d; e++)
+    		{
+    			if ((group[e] < 0) || (Math.abs(DR[d] - DR[e]) > 1) || (Math.abs(DC[d] - DC[e]) > 1)) continue;
+
+    			if (group[d] < 0) group[d] = group[e];
+
+    			// It touches two groups, they are really one
+    			else if (group[d] != group[e])
+    			{
+    				int from = group[e], to = group[d];
+
+    				for (int f = 0; f < d; f++) if (group[f] == from) group[f] = to;
+    			}
+    		}
+
+    		if (group[d] < 0) group[d] = d;
+    	}
+
+    	// One seed for each group
+    	for (int d = 0; d < DR.length; d++)
+    	{
+    		if (group[d] != d) continue;
+
+    		seeds[pieces++] = Grid.indexOf(r + DR[d], c + DC[d]);
+    	}
+
+    	// The cells around us still touch, nothing can have split
+    	if (pieces > 1) split(seeds, pieces);
+    }
+
+    // Grow a flood fill from each seed in turns until at most one is still going, then
+    // give each finished piece a label of its own
+    private void split(int[] seeds, int pieces)
+    {
+    	int size = label.length;
+    	int[] head = new int[pieces];
+    	int[] tail = new int[pieces];
+    	int[] joined = new int[pieces];				// Which flood fills have met (a tiny union-find of their own)
+    	int current, r, c, nr, nc, neighbor, other;
+
+    	// Make room for the flood fills
+    	if ((queues == null) || (queues[0].length != size))
+    	{
+    		queues = new int[MAX_PIECES][size];
+    		mark = new int[size];
+    		owner = new byte[size];
+    		stamp = 0;
+    	}
+
+    	stamp++;
+
+    	for (int i = 0; i < pieces; i++)
+    	{
+    		queues[i][0] = seeds[i];
+    		mark[seeds[i]] = stamp;
+    		owner[seeds[i]] = (byte) i;
+    		tail[i] = 1;
+    		joined[i] = i;
+    	}
+
+    	while (true)
+    	{
+    		int sets = 0, running = 0;
+
+    		// Count the pieces left, and how many are still growing
+    		for (int i = 0; i < pieces; i++)
+    		{
+    			if (root(joined, i) != i) continue;
+
+    			sets++;
+
+    			for (int j = 0; j < pieces; j++)
+    			{
+    				if ((root(joined, j) == i) && (head[j] < tail[j]))
+    				{
+    					running++;
+    					break;
+    				}
+    			}
+    		}
+
+    		// Everything met up again, nothing split
+    		if (sets == 1) return;
+
+    		// All but one piece has been walked in full
+    		if (running <= 1) break;
+
+    		// Take one step in each flood fill
+    		for (int i = 0; i < pieces; i++)
+    		{
+    			if (head[i] == tail[i]) continue;
+
+    			current = queues[i][head[i]++];
+    			r = Grid.rowFromIndex(current);
+    			c = Grid.columnFromIndex(current);
+
+    			for (int d = 0; d < DR.length; d++)
+    			{
+    				nr = r + DR[d];
+    				nc = c + DC[d];
+
+    				if (!Grid.isPlayable(nr, nc)) continue;
+
+    				neighbor = Grid.indexOf(nr, nc);
+
+    				// Reached by another flood fill, so those two pieces are one
+    				if (mark[neighbor] == stamp)
+    				{
+    					other = owner[neighbor];
+
+    					if (root(joined, other) != root(joined, i)) joined[root(joined, other)] = root(joined, i);
+    					continue;
+    				}
+
+    				mark[neighbor] = stamp;
+    				owner[neighbor] = (byte) i;
+    				queues[i][tail[i]++] = neighbor;
+    			}
+    		}
+    	}
+
+    	// Keep the old label for the piece still growing (or the biggest, if all finished)
+    	int keep = -1, biggest = -1;
+
+    	for (int i = 0; i < pieces; i++)
+    	{
+    		if (root(joined, i) != i) continue;
+
+    		int cells = 0;
+    		boolean growing = false;
+
+    		for (int j = 0; j < pieces; j++)
+    		{
+    			if (root(joined, j) != i) continue;
+
+    			cells += tail[j];
+    			growing |= (head[j] < tail[j]);
+    		}
+
+    		if (growing) cells = Integer.MAX_VALUE;
+    		if (cells > biggest)
+    		{
+    			biggest = cells;
+    			keep = i;
+    		}
+    	}
+
+    	// Every other piece gets a label of its own
+    	for (int i = 0; i < pieces; i++)
+    	{
+    		if ((root(joined, i) != i) || (i == keep)) continue;
+
+    		int id = newLabel();
+
+    		for (int j = 0; j < pieces; j++)
+    		{
+    			if (root(joined, j) != i) continue;
+
+    			for (int k = 0; k < tail[j]; k++) label[queues[j][k]] = id;
+    		}
+    	}
+    }
+
+    // Return the flood fill standing for every fill that has met fill i
+    private static int root(int[] joined, int i)
+    {
+    	while (joined[i] != i) i = joined[i];
+
+    	return i;
+    }
+}
@@ -12,6 +12,7 @@ import game.Game;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -34,6 +35,45 @@ public class Grid
     // Our list of each cell in this grid
     private static HashMap<Point, Cell> cells = null;
     
+    // The same cells stored by flat index (see indexOf), for lookups that shouldn't allocate
+    private static Cell[] cellArray = null;
+    
+    // Everything that wants to hear about cells changing
+    private static ArrayList<GridListener> listeners = new ArrayList<GridListener>();
+    
+    // Goes up every time the map changes (new grid, new cell or a cell changing playability)
+    private static int version = 0;
+    
+    // A read-only snapshot of the grid for other threads (see getView)
+    private static GridView view = null;
+    
+    // Which playable cells can reach each other (see connected)
+    private static Components components = new Components();
+    
+    // The 8 directions around a cell as (dr, dc); bit d of a neighbor mask is direction d,
+    // and direction 7 - d is the opposite of direction d
+    private static final int[] DR = { -1, -1, -1,  0,  0,  1,  1,  1 };
+    private static final int[] DC = { -1,  0,  1, -1,  1, -1,  0,  1 };
+    private static final int DIAGONALS = 0xA5;
+    
+    // Which of the 8 cells around each cell are playable (built on first use, see getNeighborMask)
+    private static byte[] neighborMasks = null;
+    
+    // How far away the cell in each direction is, by flat index
+    private static int[] neighborOffsets = new int[8];
+    
+    // The largest clearance we keep track of (see getClearance)
+    public static final int MAX_CLEARANCE = 127;
+    
+    // The clearance of each cell (built on first use, see getClearance)
+    private static byte[] clearance = null;
+    
+    // No cell on the map costs less than this to cross (see getMinCost)
+    private static int minCost = Cell.DEFAULT_COST;
+    
+    // The cell indexes of every goal cell, in order (built on first use, see getGoals)
+    private static int[] goals = null;
+    
     // Creates the cell list
     public static void createGrid(int r, int c, int s)
     {
@@ -43,6 +83,15 @@ public class Grid
         
         // Create our cellList
         cells = new HashMap<Point, Cell>(rows * columns);
+        cellArray = new Cell[rows * columns];
+        neighborMasks = null;
+        clearance = null;
+        goals = null;
+        minCost = Cell.DEFAULT_COST;
+        version++;
+        
+        // Stepping one row moves a whole row of indexes
+        for (int d = 0; d < 8; d++) neighborOffsets[d] = (DR[d] * columns) + DC[d];
         
         // Set the minX and minY coordinates
         minX = ((Game.WIDTH - (columns * cellSize)) / 2); 
@@ -60,6 +109,264 @@ public class Grid
     public static void addCell(Cell cell)
     {
         cells.put(cell.getGridLocation(), cell);
+        minCost = Math.min(minCost, cell.getCost());
+        
+        // Also store it by flat index if it lies within the grid
+        if (contains(cell.getR(), cell.getC()))
+        {
+            cellArray[indexOf(cell.getR(), cell.getC())] = cell;
+            
+            // Tell the cells around it about the new cell
+            if (neighborMasks != null) updateMasks(cell.getR(), cell.getC());
+            if (clearance != null) updateClearance(cell.getR(), cell.getC());
+            
+            // It may be a goal
+            goals = null;
+        }
+        
+        version++;
+    }
+    
+    // Start telling listener about cells that change
+    public static void addListener(GridListener listener)
+    {
+        if (!listeners.contains(listener)) listeners.add(listener);
+    }
+    
+    // Stop telling listener about cells that change
+    public static void removeListener(GridListener listener)
+    {
+        listeners.remove(listener);
+    }
+    
+    // Called by Cell when it changes whether or not it is playable
+    public static void cellChanged(Cell cell)
+    {
+        // Cells that aren't in the grid yet (still being parsed) don't matter
+        if (getCell(cell.getR(), cell.getC()) != cell) return;
+        
+        version++;
+        
+        // Tell the cells around it whether they can step onto it now
+        if (neighborMasks != null) updateMasks(cell.getR(), cell.getC());
+        
+        // Fix the clearance of the cells whose squares reach this one
+        if (clearance != null) updateClearance(cell.getR(), cell.getC());
+        
+        // Keep the component labels up to date before anyone else looks
+        components.cellChanged(cell);
+        
+        // Tell our listeners
+        for (GridListener listener : listeners) listener.cellChanged(cell);
+    }
+    
+    // Called by Cell when its cost changes
+    public static void costChanged(Cell cell)
+    {
+        // Cells that aren't in the grid yet are counted by addCell
+        if (getCell(cell.getR(), cell.getC()) != cell) return;
+        
+        // Paths found before are no longer the cheapest
+        version++;
+        minCost = Math.min(minCost, cell.getCost());
+    }
+    
+    // Called by Cell when it changes whether or not it is a goal
+    public static void goalChanged(Cell cell)
+    {
+        // Cells that aren't in the grid yet are counted by addCell
+        if (getCell(cell.getR(), cell.getC()) != cell) return;
+        
+        goals = null;
+    }
+    
+    // Return the cell indexes of every goal cell, lowest first (don't change the array)
+    public static int[] getGoals()
+    {
+        if (goals != null) return goals;
+        
+        int count = 0;
+        
+        for (int i = 0; i < cellArray.length; i++) if ((cellArray[i] != null) && cellArray[i].isGoal()) count++;
+        
+        goals = new int[count];
+        count = 0;
+        
+        for (int i = 0; i < cellArray.length; i++) if ((cellArray[i] != null) && cellArray[i].isGoal()) goals[count++] = i;
+        
+        return goals;
+    }
+    
+    // Return the lowest cost of crossing any cell (never goes up until a new map is loaded,
+    // so heuristics scaled by it never overestimate)
+    public static int getMinCost() {
+        return minCost;
+    }
+    
+    // Return the map version (anything built for an older version may be out of date)
+    public static int getVersion() {
+        return version;
+    }
+    
+    // Return which of the 8 cells around cell index are playable (bit d = direction d, see getNeighborOffset)
+    public static int getNeighborMask(int index)
+    {
+        if (neighborMasks == null) buildMasks();
+        
+        return (neighborMasks[index] & 0xFF);
+    }
+    
+    // Return how far (in flat indexes) the cell in direction d is
+    public static int getNeighborOffset(int d) {
+        return neighborOffsets[d];
+    }
+    
+    // Whether or not direction d is diagonal
+    public static boolean isDiagonal(int d) {
+        return (((DIAGONALS >> d) & 1) != 0);
+    }
+    
+    // Return the clearance of cell index: the size of the largest square of playable cells
+    // with cell index as its top-left (lowest row and column) corner, up to MAX_CLEARANCE
+    // (0 if the cell isn't playable). A unit spanning n cells fits anywhere the clearance is n or more.
+    public static int getClearance(int index)
+    {
+        if (clearance == null) buildClearance();
+        
+        return clearance[index];
+    }
+    
+    // Return the clearance of cell (r, c) (0 if it lies outside the grid)
+    public static int getClearance(int r, int c) {
+        return (contains(r, c) ? getClearance(indexOf(r, c)) : 0);
+    }
+    
+    // Whether or not cell index b can be reached from cell index a (8-connected)
+    public static boolean connected(int a, int b) {
+        return components.connected(a, b);
+    }
+    
+    // Return the connected component cell (r, c) belongs to (-1 if it isn't playable)
+    public static int getComponent(int r, int c) {
+        return components.component(indexOf(r, c));
+    }
+    
+    // Work out the neighbor mask of every cell
+    private static void buildMasks()
+    {
+        neighborMasks = new byte[rows * columns];
+        
+        for (int index = 0; index < neighborMasks.length; index++)
+        {
+            int mask = 0, r = rowFromIndex(index), c = columnFromIndex(index);
+            
+            for (int d = 0; d < 8; d++)
+                if (isPlayable(r + DR[d], c + DC[d])) mask |= (1 << d);
+            
+            neighborMasks[index] = (byte) mask;
+        }
+    }
+    
+    // Cell (r, c) changed: flip its bit in the mask of each cell around it
+    private static void updateMasks(int r, int c)
+    {
+        boolean playable = isPlayable(r, c);
+        
+        for (int d = 0; d < 8; d++)
+        {
+            if (!contains(r + DR[d], c + DC[d])) continue;
+            
+            // From there, we are in the opposite direction
+            int index = indexOf(r + DR[d], c + DC[d]);
+            
+            if (playable) neighborMasks[index] |= (1 << (7 - d));
+            else neighborMasks[index] &= ~(1 << (7 - d));
+        }
+    }
+    
+    // Work out the clearance of every cell, starting from the bottom-right corner so the
+    // cells each square depends on are always done first
+    private static void buildClearance()
+    {
+        clearance = new byte[rows * columns];
+        
+        for (int index = clearance.length - 1; index >= 0; index--)
+            clearance[index] = (byte) clearanceOf(rowFromIndex(index), columnFromIndex(index));
+    }
+    
+    // The clearance of cell (r, c) from the cells below, beside and diagonally past it
+    private static int clearanceOf(int r, int c)
+    {
+        if (!isPlayable(r, c)) return 0;
+        
+        int below = (contains(r + 1, c) ? clearance[indexOf(r + 1, c)] : 0);
+        int beside = (contains(r, c + 1) ? clearance[indexOf(r, c + 1)] : 0);
+        int past = (contains(r + 1, c + 1) ? clearance[indexOf(r + 1, c + 1)] : 0);
+        
+        return Math.min(MAX_CLEARANCE, 1 + Math.min(below, Math.min(beside, past)));
+    }
+    
+    // Cell (r, c) changed: only cells up and to the left of it can have squares reaching it,
+    // so walk back up the rows from it, only looking at cells next to one that just changed,
+    // and stop at the first row where nothing changed
+    private static void updateClearance(int r, int c)
+    {
+        boolean[] below = new boolean[c + 2];		// Which columns changed in the row below
+        boolean[] here = new boolean[c + 2];		// Which columns changed in this row
+        boolean[] swap;
+        int lowest = c + 1;							// The leftmost column that changed in the row below
+        int leftmost, value, index;
+        
+        for (int row = r; row >= 1; row--)
+        {
+            leftmost = c + 1;
+            
+            for (int col = c; col >= 1; col--)
+            {
+                // Nothing this cell depends on changed
+                if (((row != r) || (col != c)) && !here[col + 1] && !below[col] && !below[col + 1])
+                {
+                    // ...and nothing further left will either
+                    if (col < lowest - 1) break;
+                    
+                    continue;
+                }
+                
+                index = indexOf(row, col);
+                
+                if ((value = clearanceOf(row, col)) == clearance[index]) continue;
+                
+                clearance[index] = (byte) value;
+                here[col] = true;
+                leftmost = col;
+            }
+            
+            // Nothing changed in this row, so nothing above it will
+            if (leftmost > c) break;
+            
+            // This row becomes the row below
+            swap = below;
+            below = here;
+            here = swap;
+            lowest = leftmost;
+            Arrays.fill(here, false);
+        }
+    }
+    
+    // Return a read-only snapshot of the grid that other threads can search (only call from the game thread)
+    public static GridView getView()
+    {
+        // Take a new snapshot if the map has changed since the last one
+        if ((view == null) || (view.getVersion() != version))
+        {
+            if (neighborMasks == null) buildMasks();
+            if (clearance == null) buildClearance();
+            
+            // The masks and clearance change in place as cells are edited, so the view keeps its own copies
+            view = new GridView(rows, columns, version, cellArray, neighborMasks.clone(), neighborOffsets.clone(), clearance.clone());
+        }
+        
+        return view;
     }
     
     // Return the cell list
@@ -70,12 +377,29 @@ public class Grid
     
     // Return a cell from the grid (Point cell)
     public static Cell getCell(Point cell) {
-        return cells.get(cell);
+        return getCell(cell.x, cell.y);
     }
     
     // Return a cell from the grid (int row, int column)
-    public static Cell getCell(int r, int c) {
-    	return getCell(new Point(r, c));
+    public static Cell getCell(int r, int c)
+    {
+    	// Make sure this cell is within our grid
+    	if (!contains(r, c)) return null;
+    	
+    	return cellArray[indexOf(r, c)];
+    }
+    
+    // Return a cell from the grid (int index)
+    public static Cell getCell(int index) {
+    	return cellArray[index];
+    }
+    
+    // Whether or not the cell at (r, c) exists and is playable
+    public static boolean isPlayable(int r, int c)
+    {
+    	Cell cell = getCell(r, c);
+    	
+    	return ((cell != null) && cell.isPlayable());
     }
     
     // Return a cell from the grid (int x, int y)
@@ -128,12 +452,41 @@ public class Grid
         return columns;
     }
     
+    // Return the number of cells in this grid
+    public static int getSize() {
+        return rows * columns;
+    }
+    
     /**
      *
      * Useful functions
      *
      **/
     
+    // Whether or not (r, c) lies within the grid (rows and columns start at 1)
+    public static boolean contains(int r, int c)
+    {
+        return ((r >= 1) && (r <= rows) && (c >= 1) && (c <= columns));
+    }
+    
+    // Return the flat index of (r, c), from 0 to getSize() - 1
+    public static int indexOf(int r, int c)
+    {
+        return (((r - 1) * columns) + (c - 1));
+    }
+    
+    // Return r from a flat index
+    public static int rowFromIndex(int index)
+    {
+        return ((index / columns) + 1);
+    }
+    
+    // Return c from a flat index
+    public static int columnFromIndex(int index)
+    {
+        return ((index % columns) + 1);
+    }
+    
     // Return x from r
     public static int XFromRow(int r)
     {
@@ -265,6 +618,72 @@ public class Grid
         return cellList;
     }
     
+    // Whether or not a width x height box can slide in a straight line from having its top-left
+    // corner at (x1, y1) to having it at (x2, y2) without touching a cell that isn't playable.
+    //
+    // The box sweeps out the shape between its start and end positions. For each column of
+    // cells that shape crosses, we work out how far along the line the box overlaps that column
+    // and so which rows it covers there, then check those cells. Every cell touched on the way is
+    // checked (the supercover of the box, not just sample points), a box edge lying exactly on a
+    // cell border counts as touching the next cell (as it does in MovableEntity.canMove), and
+    // nothing is allocated.
+    public static boolean lineOfSight(int x1, int y1, int x2, int y2, int width, int height)
+    {
+        int dx = (x2 - x1);
+        int dy = (y2 - y1);
+        double tLow, tHigh, xLow, xHigh;
+        
+        // The columns the box covers at some point on the way
+        int first = columnFromY(Math.min(y1, y2));
+        int last = columnFromY(Math.max(y1, y2) + height);
+        
+        for (int c = first; c <= last; c++)
+        {
+            // The box overlaps column c while its top edge is within [top, bottom]
+            int top = YFromColumn(c) - height;
+            int bottom = YFromColumn(c) + cellSize;
+            
+            // How far along the line (0 to 1) that is
+            if (dy == 0)
+            {
+                if ((y1 < top) || (y1 > bottom)) continue;
+                
+                tLow = 0;
+                tHigh = 1;
+            }
+            
+            else
+            {
+                tLow = (double) (top - y1) / dy;
+                tHigh = (double) (bottom - y1) / dy;
+                
+                // Moving up the columns instead of down them
+                if (tLow > tHigh)
+                {
+                    double swap = tLow;
+                    tLow = tHigh;
+                    tHigh = swap;
+                }
+                
+                tLow = Math.max(tLow, 0);
+                tHigh = Math.min(tHigh, 1);
+                
+                if (tLow > tHigh) continue;
+            }
+            
+            // Where the box's left and right edges are over that stretch
+            xLow = x1 + (Math.min(tLow * dx, tHigh * dx));
+            xHigh = x1 + (Math.max(tLow * dx, tHigh * dx)) + width;
+            
+            // Every row it covers in this column has to be playable
+            for (int r = rowFromX((int) Math.floor(xLow)), end = rowFromX((int) Math.floor(xHigh)); r <= end; r++)
+                if (!isPlayable(r, c)) return false;
+        }
+        
+        // Nothing in the way
+        return true;
+    }
+    
     // Returns points along a line spaced apart by int spacing length
     public static Point[] pointsAlongLine(Point start, Point end, int spacing)
     {        
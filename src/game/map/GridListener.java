@@ -0,0 +1,9 @@
+package game.map;
+
+// Implemented by anything that keeps data derived from the Grid and needs to
+// hear about cells changing (see Grid.addListener)
+public interface GridListener
+{
+    // Called after a Cell in the Grid has changed whether or not it is playable
+    public void cellChanged(Cell cell);
+}
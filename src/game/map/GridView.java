@@ -0,0 +1,93 @@
+package game.map;
+
+// A read-only snapshot of which cells of the Grid are playable, along with
+// their neighbor masks and clearance (see Grid.getNeighborMask and
+// Grid.getClearance). Nothing in it changes after it is made, so any number of
+// threads can search it while the game thread carries on editing the real
+// Grid. Grid.getView() hands out the same view until the map changes.
+public final class GridView
+{
+	private final int rows;							// The number of rows (in cells)
+	private final int columns;						// The number of columns (in cells)
+	private final int version;						// The Grid version this view was taken from
+	private final boolean[] playable;				// Whether or not each cell is playable, by flat index
+	private final byte[] neighborMasks;				// Which of the 8 cells around each cell are playable
+	private final int[] neighborOffsets;			// How far (in flat indexes) the cell in each direction is
+	private final byte[] clearance;					// The clearance of each cell
+
+    // Constructor, copies the playability of each cell (the arrays are the view's own from here on)
+    GridView(int rows, int columns, int version, Cell[] cells, byte[] neighborMasks, int[] neighborOffsets, byte[] clearance)
+    {
+    	this.rows = rows;
+    	this.columns = columns;
+    	this.version = version;
+    	this.neighborMasks = neighborMasks;
+    	this.neighborOffsets = neighborOffsets;
+    	this.clearance = clearance;
+
+    	playable = new boolean[rows * columns];
+
+    	for (int i = 0; i < playable.length; i++)
+    		playable[i] = ((cells[i] != null) && cells[i].isPlayable());
+    }
+
+    // Return the number of rows
+    public int getRows() {
+    	return rows;
+    }
+
+    // Return the number of columns
+    public int getColumns() {
+    	return columns;
+    }
+
+    // Return the number of cells
+    public int getSize() {
+    	return playable.length;
+    }
+
+    // Return the Grid version this view was taken from
+    public int getVersion() {
+    	return version;
+    }
+
+    // Whether or not (r, c) lies within the view (rows and columns start at 1)
+    public boolean contains(int r, int c) {
+    	return ((r >= 1) && (r <= rows) && (c >= 1) && (c <= columns));
+    }
+
+    // Whether or not the cell at (r, c) exists and is playable
+    public boolean isPlayable(int r, int c) {
+    	return (contains(r, c) && playable[indexOf(r, c)]);
+    }
+
+    // Return the flat index of (r, c), the same as Grid.indexOf
+    public int indexOf(int r, int c) {
+    	return (((r - 1) * columns) + (c - 1));
+    }
+
+    // Return r from a flat index
+    public int rowFromIndex(int index) {
+    	return ((index / columns) + 1);
+    }
+
+    // Return c from a flat index
+    public int columnFromIndex(int index) {
+    	return ((index % columns) + 1);
+    }
+
+    // Return which of the 8 cells around cell index are playable, the same as Grid.getNeighborMask
+    public int getNeighborMask(int index) {
+    	return (neighborMasks[index] & 0xFF);
+    }
+
+    // Return how far (in flat indexes) the cell in direction d is, the same as Grid.getNeighborOffset
+    public int getNeighborOffset(int d) {
+    	return neighborOffsets[d];
+    }
+
+    // Return the clearance of cell index, the same as Grid.getClearance
+    public int getClearance(int index) {
+    	return clearance[index];
+    }
+}
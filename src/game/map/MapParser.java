@@ -206,6 +206,18 @@ public class MapParser extends DefaultHandler
                 else tempCell.setPlayable(false);
             }
             
+            // Set the cell's terrain cost (left at Cell.DEFAULT_COST if missing or not a number)
+            else if (qName.equalsIgnoreCase("cost"))
+            {
+                try {
+                    tempCell.setCost(Integer.parseInt(tempValue));
+                }
+                
+                catch (NumberFormatException e) {
+                    System.out.println("Bad cost '" + tempValue + "' for cell " + tempCell.getGridLocation());
+                }
+            }
+            
             // Exiting a cell element
             else if (qName.equalsIgnoreCase("cell"))
             {
@@ -1,112 +1,85 @@
 package game.modules.pathfinding;
 
 import game.entities.Entity;
-import game.entities.MovableEntity;
 import game.map.Cell;
 import game.map.Grid;
 
-import java.awt.Point;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
 // A* Pathfinding class: using Manhattan Distance forumula 
-public final class AStar
+//
+// Moves are weighted by the terrain cost of the cell moved onto (see Cell.getCost),
+// and the open list is a BucketQueue since every cost is a small integer. Once the
+// Landmarks tables are ready for the current map, the heuristic also takes their
+// (much tighter) lower bound.
+//
+// With a step limit, the path handed out between slices is the part that is
+// already settled: the trunk of the search tree that every open node still
+// descends from. Nodes only ever take a parent we are expanding, which is an
+// open node, so the final path has to run down the trunk. The entity can
+// start walking it straight away, and each slice only smooths and appends the
+// stretch the trunk has grown by. Each Node counts its children that still
+// lead to the open list, which lets the trunk move down in O(1) per step
+// instead of re-walking the tree.
+public final class AStar extends PathFinder
 {
 	// (F) = Total cost of movement (movement cost + heuristic estimate).
 	// (G) = The movement cost to move from the starting point to a given node, following the path generated to get there.
 	// (H) = The estimated movement cost to move from that given square on the grid to the final destination, the target.
 	
-    private Entity entity;							// The entity this instance is associated with
-    
-    private int expanded = 0;    					// How many nodes we have expanded
-    private int limit = 0;    						// How far to calculate in each loop (0 = until goal is found)
-    
     private Node goalNode = null; 					// The goal node
     private Node startNode = null; 					// The start node
     
-    private Heap openList = null; 					// Stores nodes we have to check out
+    private BucketQueue openList = null; 			// Stores nodes we have to check out
     private Heap closedList = null; 				// Stores nodes we have already checked
     
-    private boolean needPath = false;				// Whether or not AStar needs to be building a path
-    private boolean isFinished = false;             // Whether or not AStar has finished building the current path
+    private Workspace workspace = null;				// The Node kept for each Cell, reused between searches
+    private int goalIndex = -1;						// The goal cell index
+    private Landmarks.Table landmarks = null;		// Landmark tables for the current map (null = use octile only)
     
-    private ArrayList<Node> pathList = null;		// The list containing our path
-    private HashMap<Cell, Node> nodeList = null;	// The list containing Cell costs
+    private Node trunk = null;						// The deepest node every open node descends from
+    private Node anchor = null;						// The last settled waypoint
+    private Node tip = null;						// The last trunk node smoothed so far (not a waypoint yet)
+    private int[] settled = null;					// The settled waypoint cell indexes, start first (shared with our Paths)
+    private int count = 0;							// The number of settled waypoints
     
     // Constructor
     public AStar(Entity entity) {
-    	this.entity = entity;
-    }
-    
-    // For testing
-    public int getExpanded() {
-        return expanded;
-    }
-    
-    // Return the path
-    public ArrayList<Node> getPath()
-    {
-        return pathList;
-    }
-    
-    // Return the size of the path
-    public int getPathSize() {
-    	return pathList.size();
+    	super(entity);
     }
     
-    // Return Node at location n on pathList
-    public Node getNode(int n)
-    {
-    	// Since we follow the list from back to front, the index is reversed
-    	// IE: if getSize() = 25 and n = 5, we are really getting Node 20 (not 5)
-    	return pathList.get(getPathSize() - n);
+    // Moves are weighted by terrain cost
+    public boolean usesTerrain() {
+    	return true;
     }
     
-    // Whether or not we have a path to move along
-    public boolean pathExists()
-    {
-    	if (pathList == null) return false;
-    	return ((pathList.size() > 0) ? true : false);
-    }
-    
-    // Whether or not AStar is building a path
-    public boolean buildingPath() {
-    	return needPath;
-    }
-    
-    public boolean pathIsFinished() {
-        return isFinished;
-    }
-    
-    // Number of steps to take per loop
-    public void setStepLimit(int steps) {
-    	limit = steps;
+    // Our path only ever grows, the part handed out before the search ends is the settled trunk
+    public boolean isCommitted() {
+    	return true;
     }
     
     // Store the starting point of the path and add it to openList
     public void setStart(Cell start)
     {
-    	// Create a Node for this Cell
-    	this.startNode = new Node(start);
-    	
-    	// Add it to the nodeList
-    	nodeList.put(start, startNode);
+    	// Grab the Node for this Cell
+    	this.startNode = workspace.newNode(Grid.indexOf(start.getR(), start.getC()));
     	
     	// Add it to the openList
 	   	openList.add(startNode);
+	   	
+	   	// Nothing is settled but the start
+	   	trunk = anchor = tip = startNode;
+	   	settled = new int[16];
+	   	settled[0] = index(startNode);
+	   	count = 1;
+	   	path = Path.prefix(settled, count, 0);
     }
     
     // Store the goal point of the path
     public void setGoal(Cell goal)
     {
-    	// Create a Node for this Cell
-	   	this.goalNode = new Node(goal);
-	   	
-    	// Add it to the nodeList
-    	nodeList.put(goal, goalNode);
+    	// Grab the Node for this Cell
+	   	this.goalNode = workspace.newNode(goalIndex = Grid.indexOf(goal.getR(), goal.getC()));
     }
     
     // Re-calculates the path with new start and goal nodes
@@ -118,6 +91,13 @@ public final class AStar
 	   	// Set our new starting point and goal point
 	   	setStart(start);
 	   	setGoal(goal);
+	   	
+	   	// Don't bother searching if the goal can't be reached
+	   	if (rejectUnreachable(Grid.indexOf(start.getR(), start.getC()), Grid.indexOf(goal.getR(), goal.getC())))
+	   	{
+	   		path = Path.EMPTY;
+	   		cleanUp();
+	   	}
     }
     
     // Calculating the best path based on the start and goal nodes given in the constructor.
@@ -130,7 +110,8 @@ public final class AStar
     	int movementCost      		= 0;    // Stores the calculated cost of the current node
     	boolean needUpdate			= true; // Whether or not the neighbor node needs to be updated
         Node currentNode     		= null; // the node we are currently working on
-        ArrayList<Node> neighbors 	= null; // currentNode's neighbors
+        Node neighbor				= null; // One of currentNode's neighbors
+        int index, neighborIndex, mask;		// currentNode's cell index, a neighbor's, and the playable cells around it
         
         // Loop through all possible nodes and find the best path to the goal
         while (openList.size() > 0)
@@ -151,27 +132,46 @@ public final class AStar
             // Otherwise, continue to search for next best move
             else
             {
-	             // Gather a list of neighbors to the currentNode
-	             neighbors = neighbors(currentNode);
+	             index = index(currentNode);
 	
-	             // Loop through neighbors
-	             for (Node neighbor : neighbors)
-	             {	            	 
+	             // Go through the playable cells around currentNode (one bit each)
+	             for (mask = Grid.getNeighborMask(index); mask != 0; mask &= (mask - 1))
+	             {
+	            	 neighborIndex = index + Grid.getNeighborOffset(Integer.numberOfTrailingZeros(mask));
+	            	 
+	            	 // Skip cells the entity is too big to stand in (the goal is always allowed, so big
+	            	 // units still head for goals tucked into corners)
+	            	 if ((unitSize > 1) && (neighborIndex != goalIndex) && (Grid.getClearance(neighborIndex) < unitSize)) continue;
+	            	 
+	            	 // Grab the Node for this Cell, or a fresh one if we haven't seen it yet
+	            	 neighbor = workspace.getNode(neighborIndex);
+	            	 
+	            	 if (neighbor == null)
+	            	 {
+	            		 neighbor = workspace.newNode(neighborIndex);
+	            		 expanded++;
+	            	 }
+	            	 
 	            	 // The estimated cost if we were to move through this neighbor node
-	                 movementCost = currentNode.movementCost() + estimate(currentNode, neighbor);
+	                 movementCost = currentNode.movementCost() + step(currentNode, neighbor);
 	                 
-	                 // If neighbor is on closedList...
+	                 // If neighbor is on openList...
 	                 if (openList.contains(neighbor))
 	                 {
-	                     // If this move is better, remove neighbor from openList for re-evaluation
+	                     // If this move is better, lower its costs in place and re-sort the openList
 	                     if (movementCost < neighbor.movementCost())
-	                    	 openList.remove(neighbor);
-	                     
-	                     // Otherwise, don't update it
-	                     else needUpdate = false;
+	                     {
+	                    	 adopt(currentNode, neighbor);
+	                    	 neighbor.setParent(currentNode);
+	                    	 neighbor.setCosts(movementCost, neighbor.estimatedCost());
+	                    	 openList.decreaseKey(neighbor);
+	                     }
+
+	                     // Either way, it is already on the openList
+	                     needUpdate = false;
 	                 }
-	
-	                 // If neighbor is on openList...
+
+	                 // If neighbor is on closedList...
 	                 else if (closedList.contains(neighbor))
 	                 {
 	                     // If this move is better, remove neighbor from closedList for re-evaluation
@@ -186,6 +186,7 @@ public final class AStar
 	                 if (needUpdate)
 	                 {
 	                	 // Set its parent to currentNode
+	                	 adopt(currentNode, neighbor);
 	                	 neighbor.setParent(currentNode);
 	                	 
 	                	 // Calculate new movementCost, estimatedCost and totalCost
@@ -199,246 +200,214 @@ public final class AStar
 	                 needUpdate = true;
 	             }
 	             
+	             // A dead end, it no longer leads anywhere
+	             if ((currentNode.getBranches() == 0) && (currentNode.getParent() != null)) release(currentNode.getParent());
+	             
 	             // Increase steps taken on this loop
 	             steps++;
             }
             
-            // If we are finished or have reached our limit for this loop, build best path to this point and exit
-            if (!needPath || ((limit > 0) && (steps > 0) && (steps % limit == 0)))
-            {            	
-            	// Set the new capacity of our pathList
-                pathList.ensureCapacity(pathList.size() + steps);
-                
-                // Store our best path up to this point in our pathList
-                pathList = buildPath(currentNode);
-                
-                // Break out of loop
-                break;
+            // We are finished, settle the rest of the path down to the goal and exit
+            if (!needPath)
+            {
+            	path = finish(currentNode);
+            	break;
+            }
+            
+            // We have reached our limit for this loop, settle what we can and exit
+            if (reachedLimit(steps))
+            {
+            	grow();
+            	break;
             }
         }
         
-        // Entity is unable to move to goal (path blocked)
+        // Entity is unable to move to goal (path blocked), there is nothing left to search
         if (needPath && openList.size() == 0)
         {
-	       	// TODO
-	       	if (entity.debugOn())
-	       		System.out.println("Entity #" + entity.getNumber() + ": can't move!");
+        	noPath();
+        	needPath = false;
+        	cleanUp();
+        	return;
         }
         
         // Path is complete
         if (!needPath)
         {            
             // DEBUG - write final path to file
-       	    if (entity.debugOn())
-       	    {
-	            // Output the path information for each entity to text files
-	           	try
-	           	{
-		           	Node node;
-		           	BufferedWriter out = new BufferedWriter(new FileWriter("entityPath-" + entity.getNumber() + ".txt"));
-		           	     
-		           	// Summary
-		    	   	out.write(
-		    	   		"Path from (" + startNode.getCell().getR() + "," + startNode.getCell().getC() +
-		    	   		") to (" + goalNode.getCell().getR() + "," + goalNode.getCell().getC() + ")"
-		    	   	);
-		    	   	out.newLine();
-		           	out.write("Total nodes expanded: " + getExpanded() + ".");
-		           	out.newLine();
-		           	out.write("Final path size: " + getPathSize() + " nodes.");
-		           	out.newLine();
-		           	     
-		           	// Column headers
-		           	out.newLine();
-		           	out.write("[Position]\t[Cell]\t\t[Total Cost]\t[Special]");
-		           	     
-		           	// Loop through final path and output each move
-		           	for (int x = 1; x <= getPathSize(); x++)
-		           	{
-		           		node = pathList.get(getPathSize() - x);
-		           	    	 
-		           	    out.newLine();
-		           	    out.write(x + ".\t\t(" + node.getCell().getR() + "," + node.getCell().getC() + ")\t\t" + node.totalCost());
-		           	    
-		           	    // Check for startNode and goalNode
-		           	    if (node.getCell().getGridLocation() == startNode.getCell().getGridLocation()) out.write("\t\tstartNode");
-		           	    if (node.getCell().getGridLocation() == goalNode.getCell().getGridLocation()) out.write("\t\tgoalNode");
-		       	    }
-		           	     
-		           	// Close stream
-		           	out.close();
-		           	     
-		           	// Tell console we wrote path contents to file
-		           	System.out.println("Entity #" + entity.getNumber() + ": Path contents written to file 'entityPath-" + entity.getNumber() + ".txt'");
-	           	}
-	           	 
-	           	// Could not write to file
-	           	catch (IOException e) {
-	           		System.out.println("Could not write to file: entityPath-" + entity.getNumber() + ".txt");
-	           	}
-       	    }
+            writePath(startNode.getCell(), goalNode.getCell());
        	 
         	// If we are done, clean up
             cleanUp();
         }
     }
     
+    // Hand our workspace back if we are dropped mid-search
+    public void dispose() {
+    	cleanUp();
+    }
+    
 	/**
 	 * 
 	 * Private Functions
 	 * 
 	 **/
     
-    // Returns a list of Nodes surrounding parentNode
-    private ArrayList<Node> neighbors(Node parentNode)
+    // H() The estimate heuristic, weighted by the cheapest terrain on the map so it never overestimates
+    private int estimate(Node start, Node goal)
     {
-        int r, c;
-        Node childNode;
-        Cell childCell;
-        Cell parentCell;
-        ArrayList<Node> tempList = new ArrayList<Node>(8);
-        
-        // Cell reference for parentNode
-        parentCell = parentNode.getCell();
-        
-        // Search the surrounding 8 nodes for possible places to go
-        for (r = (parentCell.getR() - 1); r <= (parentCell.getR() + 1); r++)
-        {    
-            for (c = (parentCell.getC() - 1); c <= (parentCell.getC() + 1); c++)
-            {
-                // Grab the Cell at location (r, c)
-           	 	childCell = Grid.getCell(r, c);
-           	 
-           	 	// Make sure this Cell exists and is playable
-                if ((childCell != null) && childCell.isPlayable())
-                {
-                	// Attempt to grab the Node for this Cell
-                	childNode = nodeList.get(childCell);
-                	
-                	// If this node is already on our nodeList...
-                	if (childNode != null)
-                	{                		
-               	 		// if childNode is not parentNode, add it to our list
-                		if (childNode != parentNode) tempList.add(childNode);
-                		
-                		// Otherwise, skip it
-                		else continue;
-                	}
-                	
-                	// If this node is not on our nodeList...
-                	else	
-                	{                		
-                		// Create a new Node
-                		childNode = new Node(childCell);
-	                	
-	                	// Set this Node's parent as currentNode
-	                	childNode.setParent(parentNode);
-	                	
-	                    // Calculate F(), G() and H() for this Node
-	                	childNode.setCosts((parentNode.movementCost() + estimate(parentNode, childNode)), estimate(childNode, goalNode));
-	               	 
-	               	 	// Add Node to templist
-	               	 	tempList.add(childNode);
-	                	
-	                	// Add Node to nodeList
-	                	nodeList.put(childCell, childNode);
-	                	
-	                    // Increase nodes expanded
-	                    expanded++;
-                	}
-                }
-            }
-        }
-
-        // Return a list of neighbor nodes
-        return tempList;
+    	Cell a = start.getCell(), b = goal.getCell();
+    	int h = estimate(a.getR(), a.getC(), b.getR(), b.getC());
+    	
+    	// Both are lower bounds, so the larger is too
+    	if (landmarks != null) h = Math.max(h, landmarks.estimate(Grid.indexOf(a.getR(), a.getC()), Grid.indexOf(b.getR(), b.getC())));
+    	
+        return h * Grid.getMinCost();
     }
     
-    // H() The estimate heuristic
-    private int estimate(Node start, Node goal)
+    // The cost of moving from one Node onto a neighboring Node, weighted by the terrain we move onto
+    // (kept unscaled, so it's exact and estimate() stays a lower bound whatever the costs are)
+    private static int step(Node from, Node to)
     {
-        int straightCost = 10; // The movement cost for going straight (horizontal/vertical)
-        int diagonalCost = 14; // The movement cost for going diagonally (approx. sqrt(2) * sc)
-        
-        // The Manhattan Distance from the start node to the goal node (horizontal/vertical)
-        int straightSteps = (Math.abs(start.getCell().getR() - goal.getCell().getR()) + Math.abs(start.getCell().getC() - goal.getCell().getC()));
-        
-        // The number of steps we would take going diagonally
-        int diagonalSteps = Math.min(Math.abs(start.getCell().getR() - goal.getCell().getR()), Math.abs(start.getCell().getC() - goal.getCell().getC()));
-        
-        // The actual heuristic for moving horizontally, vertically, or diagonally
-        int estimate = (diagonalCost * diagonalSteps) + (straightCost * (straightSteps - (2 * diagonalSteps)));
-        
-        // Return our estimate
-        return estimate;
+    	Cell a = from.getCell(), b = to.getCell();
+    	
+        return (((a.getR() != b.getR()) && (a.getC() != b.getC())) ? DIAGONAL : STRAIGHT) * b.getCost();
+    }
+    
+    // The movement cost of reaching node, in the same units as the other engines' paths
+    private static int cost(Node node) {
+    	return node.movementCost() / Cell.DEFAULT_COST;
     }
     
-    // Build the best path up to this point
-    private ArrayList<Node> buildPath(Node start)
+    // Settle the rest of the path, from the last settled waypoint down to node, and return the whole path
+    private Path finish(Node node)
    	{
-        Node current, next;
-        ArrayList<Node> tempList = new ArrayList<Node>();
+        Node current, next, start = node;
+        int length = 0;
         
-        // Add the first point to our list
-        tempList.add(start);
+        // Already settled (the goal was the start, or settled at the end of the last slice)
+        if (node == anchor) return Path.prefix(settled, count, cost(node));
         
-        // Grab the next point in line
-        current = start.getParent();
+        // The smoothed stretch is never longer than the chain of parents down from the anchor
+        for (current = node; current != anchor; current = current.getParent()) length++;
         
-        // Loop through our generated path and add only the necessary points
-        while ((next = current.getParent()) != null)
-        {            
+        // Fill the waypoints in from the back, since we walk from the end of the path to the anchor
+        int[] waypoints = new int[length];
+        int first = length;
+        
+        // Add the last point to our list
+        waypoints[--first] = index(start);
+        
+        // Loop through our generated path and add only the necessary points (the anchor is already settled)
+        for (current = start.getParent(); current != anchor; current = next)
+        {
+            next = current.getParent();
+            
             // If we can't skip the point, add it to our list and 
             // set our new starting point to our current location
             if (!walkable(start.getCell(), next.getCell()))
-                tempList.add(start = current);
-            
-            // Proceed to next point
-            current = next;
+                waypoints[--first] = index(start = current);
         }
         
-        // Add the last point to our list
-        tempList.add(current);
+        // Settle them after the anchor
+        while (first < length) settle(waypoints[first++]);
+        
+        anchor = tip = node;
         
-	   	// Return our smoothed path
-	   	return tempList;
+	   	// Return our smoothed path, it holds only cell indexes so none of the workspace's Nodes outlive the search
+        return Path.prefix(settled, count, cost(node));
     }
     
-    // Samples points along a line from point A to point B at a certain granularity
-    // checking at each point whether the unit overlaps any neighboring blocked tile.
-    // This function returns true if it encounters no blocked tiles and false otherwise. 
-    private boolean walkable(Cell a, Cell b)
+    // Move the trunk down as far as it has grown, smoothing the new stretch onto the settled path
+    private void grow()
     {
-        // We are using half cell width, anything smaller than 1/4 cell width results in error
-        Point[] points = Grid.pointsAlongLine(a.getLocation(), b.getLocation(), (Grid.getCellSize() / 2));
+        int before = count;
         
-        // Sample points along a line from Cell a to Cell b using on-fifth cell width
-        for (Point p : points)
+        // Only one of the trunk's children still leads to the open list, so every open node descends from it
+        while (!openList.contains(trunk) && (trunk.getBranches() == 1))
         {
-            // Check to see if the unit would overlap into an unplayable cell
-            // by checking the four points of its bounding box
-            if (!((MovableEntity) entity).canMove(p)) return false;
+            trunk = liveChild(trunk);
+            
+            // Can't walk straight from the last waypoint to here, so the node before it is a waypoint
+            if (!walkable(anchor.getCell(), trunk.getCell())) settle(index(anchor = tip));
+            
+            tip = trunk;
         }
         
-        // No obstructions found
-        return true;
+        // Hand out everything up to the trunk (the tip has to be a waypoint now the entity may be heading for it)
+        if (tip != anchor) settle(index(anchor = tip));
+        
+        if (count != before) path = Path.prefix(settled, count, cost(anchor));
+    }
+    
+    // Add cell index to the end of the settled path
+    private void settle(int index)
+    {
+        // Out of room, the Paths already handed out keep the old array
+        if (count == settled.length) settled = Arrays.copyOf(settled, count * 2);
+        
+        settled[count++] = index;
+    }
+    
+    // child is about to hang off parent: move its count over from its old parent (if it was counted under one)
+    private void adopt(Node parent, Node child)
+    {
+        // Children still leading to the open list are counted under their parent
+        if ((child.getParent() != null) && (openList.contains(child) || (child.getBranches() > 0)))
+            release(child.getParent());
+        
+        parent.setBranches(parent.getBranches() + 1);
     }
     
-    // Path is finished
-    private void foundGoal()
+    // node has lost a child that led to the open list, and so may its ancestors
+    private void release(Node node)
     {
-    	// Tell AStar we are done
-    	needPath = false;
-    	isFinished = true;
+        for (; node != null; node = node.getParent())
+        {
+            node.setBranches(node.getBranches() - 1);
+            
+            // Still leads to the open list
+            if ((node.getBranches() > 0) || openList.contains(node)) break;
+        }
+    }
+    
+    // Return the one child of node that still leads to the open list
+    private Node liveChild(Node node)
+    {
+        int index = index(node);
+        Node child;
+        
+        // Its children are among the cells around it
+        for (int mask = Grid.getNeighborMask(index); mask != 0; mask &= (mask - 1))
+        {
+            child = workspace.getNode(index + Grid.getNeighborOffset(Integer.numberOfTrailingZeros(mask)));
+            
+            if ((child != null) && (child.getParent() == node) && (openList.contains(child) || (child.getBranches() > 0))) return child;
+        }
+        
+        return null;
+    }
+    
+    // The cell index of a Node
+    private static int index(Node node) {
+    	return Grid.indexOf(node.getCell().getR(), node.getCell().getC());
     }
     
     // Perform clean-up operations when the final path is built
     private void cleanUp()
     {    	 
+	   	// Hand our workspace back to the pool
+	   	Workspace.release(workspace);
+	   	
 	   	// Clean up data arrays
 	   	openList 	= null;
 	   	closedList 	= null;
-	   	nodeList	= null;
+	   	workspace	= null;
+	   	landmarks	= null;
+	   	
+	   	// Clean up the trunk (our Paths keep the settled array)
+	   	trunk = anchor = tip = null;
+	   	settled = null;
 	   	
 	   	// Clean up Node variables
 	   	startNode 	= null;
@@ -448,14 +417,21 @@ public final class AStar
     // Initialize pathFinder arrays
     private void initialize()
     {
+	    // Reuse our workspace if we still have one, otherwise grab one from the pool
+	   	if ((workspace == null) || (workspace.size() != Grid.getSize())) workspace = Workspace.acquire();
+	   	else workspace.reset();
+	   	
 	    // Initialize arrays
-	   	openList 	= new Heap();
-	   	closedList 	= new Heap();
-	   	pathList 	= new ArrayList<Node>();
-	   	nodeList	= new HashMap<Cell, Node>();
+	   	openList 	= workspace.openList;
+	   	closedList 	= workspace.closedList;
+	   	path = Path.EMPTY;
+	   	
+	   	// Use the landmark tables if they are ready for this map (otherwise this starts them building)
+	   	landmarks 	= Landmarks.get().table();
 	   	 
 	   	// Initialize variables
 	   	expanded 	= 0;
 	   	needPath 	= true;
+	   	isFinished	= false;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
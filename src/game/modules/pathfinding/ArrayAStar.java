@@ -0,0 +1,134 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+
+// A* Pathfinding class backed by primitive arrays instead of Node objects.
+// Costs, parents and open/closed state are stored in parallel arrays indexed
+// by Grid.indexOf(r, c), so the search loop itself allocates nothing; Nodes
+// are only created for the final waypoints handed back through getPath().
+// The arrays live in a pooled Workspace, so starting a search is O(1) too.
+// The loop itself is an ArraySearch over a GridView of the current map, the
+// same one the PathService workers run, so both find the same paths.
+public final class ArrayAStar extends PathFinder
+{
+	private int start = -1;							// The start cell index
+	private int goal = -1;							// The goal cell index
+
+	private Workspace workspace = null;				// Our search arrays, reused between searches
+	private ArraySearch search = new ArraySearch();	// The search itself
+
+    // Constructor
+    public ArrayAStar(Entity entity) {
+    	super(entity);
+    }
+
+    // Re-calculates the path with new start and goal cells
+    public void newPath(Cell start, Cell goal)
+    {
+    	// Initialize arrays
+    	initialize();
+
+    	// Set our new starting point and goal point
+    	this.start = Grid.indexOf(start.getR(), start.getC());
+    	this.goal = Grid.indexOf(goal.getR(), goal.getC());
+
+    	// Don't bother searching if the goal can't be reached
+    	if (rejectUnreachable(this.start, this.goal))
+    	{
+    		cleanUp();
+    		return;
+    	}
+
+    	// Add the start cell to the openList
+    	search.start(Grid.getView(), workspace, this.start, this.goal, unitSize);
+    }
+
+    // Calculating the best path based on the start and goal cells given to newPath()
+    public void findPath()
+    {
+    	// Make sure we have starting and ending points and that we don't already have a path
+        if (!needPath || start < 0 || goal < 0) return;
+
+        int steps = 0;						// Used to count the number of steps taken per method call
+        int current;						// The cell we are working on
+
+        // Loop through all possible cells and find the best path to the goal
+        while ((current = search.step()) >= 0)
+        {
+        	// If we have found the goal, we no longer need a path
+        	if (current == goal) foundGoal();
+
+        	// Otherwise, increase steps taken on this loop
+        	else steps++;
+
+            // If we are finished or have reached our limit for this loop, build best path to this point and exit
+            if (!needPath || reachedLimit(steps))
+            {
+            	path = buildPath(current, workspace);
+            	break;
+            }
+        }
+
+        expanded = search.getExpanded();
+
+        // Entity is unable to move to goal (path blocked), there is nothing left to search
+        if (current < 0)
+        {
+        	noPath();
+        	needPath = false;
+        	cleanUp();
+        	return;
+        }
+
+        // Path is complete
+        if (!needPath)
+        {
+        	// DEBUG - write final path to file
+        	writePath(Grid.getCell(start), Grid.getCell(goal));
+
+        	// If we are done, clean up
+        	cleanUp();
+        }
+    }
+
+    // Hand our workspace back if we are dropped mid-search
+    public void dispose() {
+    	cleanUp();
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Perform clean-up operations when the final path is built
+    private void cleanUp()
+    {
+    	// Hand our workspace back to the pool
+    	Workspace.release(workspace);
+
+    	workspace = null;
+    	search.clear();
+
+    	// Forget the start and goal so findPath() does nothing until newPath()
+    	start = goal = -1;
+    }
+
+    // Initialize pathFinder arrays
+    private void initialize()
+    {
+	    // Reuse our workspace if we still have one, otherwise grab one from the pool
+    	if ((workspace == null) || (workspace.size() != Grid.getSize())) workspace = Workspace.acquire();
+    	else workspace.reset();
+
+    	path = Path.EMPTY;
+
+    	// Initialize variables
+    	expanded = 0;
+    	needPath = true;
+    	isFinished = false;
+    }
+}
@@ -0,0 +1,124 @@
+package game.modules.pathfinding;
+
+import game.map.Grid;
+import game.map.GridView;
+
+// The A* loop behind ArrayAStar and the PathService workers: costs, parents
+// and open/closed state live in a Workspace, and the map is read from a
+// GridView, so the same search runs on the game thread or on a worker. The
+// caller drives it one expansion at a time with step(), which leaves step
+// limits, cancelling and building the path to whoever is running it.
+final class ArraySearch
+{
+	// Cell states (cells not yet seen by this search aren't visited in the Workspace)
+	private static final byte OPEN		= 1;		// On the open list
+	private static final byte CLOSED	= 2;		// Already expanded
+
+	private GridView view = null;					// The map we are searching
+	private Workspace workspace = null;				// Our search arrays
+
+	private int goal = -1;							// The goal cell index
+	private int goalR, goalC;						// The goal's row and column
+	private int unitSize = 1;						// How many cells across the entity is (see GridView.getClearance)
+	private int expanded = 0;						// How many cells we have seen
+
+    // Start a search on view from cell index start to cell index goal for units unitSize cells across
+    void start(GridView view, Workspace workspace, int start, int goal, int unitSize)
+    {
+    	this.view = view;
+    	this.workspace = workspace;
+    	this.goal = goal;
+    	this.unitSize = unitSize;
+
+    	goalR = view.rowFromIndex(goal);
+    	goalC = view.columnFromIndex(goal);
+    	expanded = 0;
+
+    	// Add the start cell to the openList
+    	workspace.visit(start);
+    	workspace.g[start] = 0;
+    	workspace.f[start] = estimate(start);
+    	workspace.parent[start] = -1;
+    	workspace.state[start] = OPEN;
+    	workspace.intHeap.push(start);
+    }
+
+    // Take the cell with the lowest totalCost off the open list and expand it (the goal is only
+    // taken off), returns the cell index, or -1 if there is nothing left to search
+    int step()
+    {
+    	int[] g = workspace.g, f = workspace.f, parent = workspace.parent;
+    	byte[] state = workspace.state;
+    	IntHeap openList = workspace.intHeap;
+    	int current, neighbor, d, movementCost;
+
+    	if (openList.size() == 0) return -1;
+
+    	current = openList.pop();
+    	state[current] = CLOSED;
+
+    	// Found the goal, the caller can read the path back out
+    	if (current == goal) return current;
+
+    	// Go through the playable cells around us (one bit each)
+    	for (int mask = view.getNeighborMask(current); mask != 0; mask &= (mask - 1))
+    	{
+    		d = Integer.numberOfTrailingZeros(mask);
+    		neighbor = current + view.getNeighborOffset(d);
+
+    		// Skip cells the entity is too big to stand in (the goal is always allowed)
+    		if ((unitSize > 1) && (neighbor != goal) && (view.getClearance(neighbor) < unitSize)) continue;
+
+    		movementCost = g[current] + (Grid.isDiagonal(d) ? PathFinder.DIAGONAL : PathFinder.STRAIGHT);
+
+    		// First time we have seen this cell
+    		if (!workspace.isVisited(neighbor))
+    		{
+    			workspace.visit(neighbor);
+    			expanded++;
+    		}
+
+    		// Already seen, only update it if this move is better
+    		else if (movementCost >= g[neighbor]) continue;
+
+    		// Store the new costs and parent
+    		f[neighbor] = movementCost + estimate(neighbor);
+    		g[neighbor] = movementCost;
+    		parent[neighbor] = current;
+
+    		// Lower it in place if it's open, otherwise (re)open it
+    		if (state[neighbor] == OPEN) openList.decreaseKey(neighbor);
+    		else
+    		{
+    			state[neighbor] = OPEN;
+    			openList.push(neighbor);
+    		}
+    	}
+
+    	return current;
+    }
+
+    // Return how many cells the search has seen
+    int getExpanded() {
+    	return expanded;
+    }
+
+    // Let go of the map and workspace (the workspace is still the caller's to release)
+    void clear()
+    {
+    	view = null;
+    	workspace = null;
+    	goal = -1;
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // H() The octile distance from cell index from to the goal
+    private int estimate(int from) {
+    	return PathFinder.estimate(view.rowFromIndex(from), view.columnFromIndex(from), goalR, goalC);
+    }
+}
@@ -0,0 +1,278 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+
+// Bidirectional A*: one search grows out of the start towards the goal and a
+// second grows out of the goal towards the start, each with its own Workspace.
+// Whenever either one reaches a cell the other has seen, the two half paths
+// through it make a complete path. We stop once neither frontier can beat the
+// best complete path found, which (with the octile estimate being consistent)
+// is the shortest one.
+public final class BidirectionalAStar extends PathFinder
+{
+	// Cell states (cells not yet seen by a search aren't visited in its Workspace)
+	private static final byte OPEN		= 1;		// On the open list
+	private static final byte CLOSED	= 2;		// Already expanded
+
+	private static final int NONE = Integer.MAX_VALUE;	// The cost of the best path before the frontiers meet
+
+	private int start = -1;							// The start cell index
+	private int goal = -1;							// The goal cell index
+
+	private Workspace forward = null;				// The search from the start
+	private Workspace backward = null;				// The search from the goal
+
+	private int best = NONE;						// The cost of the best complete path so far
+	private int meet = -1;							// The cell the best complete path passes through
+	private int last = -1;							// The last cell the forward search expanded
+
+	private int expandedForward = 0;				// How many cells the forward search has seen
+	private int expandedBackward = 0;				// How many cells the backward search has seen
+
+    // Constructor
+    public BidirectionalAStar(Entity entity) {
+    	super(entity);
+    }
+
+    // Re-calculates the path with new start and goal cells
+    public void newPath(Cell start, Cell goal)
+    {
+    	// Initialize arrays
+    	initialize();
+
+    	// Set our new starting point and goal point
+    	this.start = last = Grid.indexOf(start.getR(), start.getC());
+    	this.goal = Grid.indexOf(goal.getR(), goal.getC());
+
+    	// Don't bother searching if the goal can't be reached
+    	if (rejectUnreachable(this.start, this.goal))
+    	{
+    		cleanUp();
+    		return;
+    	}
+
+    	// Start both searches
+    	open(forward, this.start, this.goal);
+    	open(backward, this.goal, this.start);
+
+    	// Already there
+    	if (this.start == this.goal)
+    	{
+    		best = 0;
+    		meet = this.start;
+    	}
+    }
+
+    // Calculating the best path based on the start and goal cells given to newPath()
+    public void findPath()
+    {
+    	// Make sure we have starting and ending points and that we don't already have a path
+        if (!needPath || start < 0 || goal < 0) return;
+
+        int steps = 0;						// Used to count the number of steps taken per method call
+        IntHeap forwardList = forward.intHeap;
+        IntHeap backwardList = backward.intHeap;
+
+        // Keep going while both searches have somewhere left to look
+        while ((forwardList.size() > 0) && (backwardList.size() > 0))
+        {
+        	// Neither frontier can beat the best path we have, so it is the shortest
+        	if ((best != NONE) && ((forward.f[forwardList.peek()] >= best) || (backward.f[backwardList.peek()] >= best)))
+        	{
+        		foundGoal();
+        		break;
+        	}
+
+        	// Grow whichever frontier is smaller
+        	if (forwardList.size() <= backwardList.size())
+        	{
+        		last = forwardList.peek();
+        		expandedForward += expand(forward, backward, goal);
+        	}
+
+        	else expandedBackward += expand(backward, forward, start);
+
+        	// Increase steps taken on this loop
+        	steps++;
+
+        	if (reachedLimit(steps)) break;
+        }
+
+        expanded = expandedForward + expandedBackward;
+
+        // One side ran out of cells: whatever we met through is the best there is
+        if (needPath && ((forwardList.size() == 0) || (backwardList.size() == 0)))
+        {
+        	if (best != NONE) foundGoal();
+
+        	// Entity is unable to move to goal (path blocked), there is nothing left to search
+        	else
+        	{
+        		noPath();
+        		needPath = false;
+        		cleanUp();
+        		return;
+        	}
+        }
+
+        // Path is complete
+        if (!needPath)
+        {
+        	path = joinPath();
+
+        	// DEBUG - write final path to file
+        	writePath(Grid.getCell(start), Grid.getCell(goal));
+
+        	// If we are done, clean up
+        	cleanUp();
+        }
+
+        // Reached our limit for this loop, build the best forward path to this point
+        else path = buildPath(last, forward);
+    }
+
+    // Return how many cells the search from the start has seen
+    public int getExpandedForward() {
+    	return expandedForward;
+    }
+
+    // Return how many cells the search from the goal has seen
+    public int getExpandedBackward() {
+    	return expandedBackward;
+    }
+
+    // Hand our workspace back if we are dropped mid-search
+    public void dispose() {
+    	cleanUp();
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // The cost of stepping between two neighboring cells
+    private static int step(int from, int to) {
+    	return (((Grid.rowFromIndex(from) != Grid.rowFromIndex(to)) && (Grid.columnFromIndex(from) != Grid.columnFromIndex(to))) ? DIAGONAL : STRAIGHT);
+    }
+
+    // Put the first cell of a search on its open list
+    private static void open(Workspace workspace, int from, int to)
+    {
+    	workspace.visit(from);
+    	workspace.g[from] = 0;
+    	workspace.f[from] = estimate(from, to);
+    	workspace.parent[from] = -1;
+    	workspace.state[from] = OPEN;
+    	workspace.intHeap.push(from);
+    }
+
+    // Expand the best cell of one search towards target, noting where it meets the other search,
+    // returns how many new cells it saw
+    private int expand(Workspace search, Workspace other, int target)
+    {
+    	int seen = 0;
+    	int mask, d, neighbor, movementCost;
+    	int[] g = search.g;
+    	int[] f = search.f;
+    	byte[] state = search.state;
+
+    	// Set our current cell to the one with the lowest totalCost
+    	int current = search.intHeap.pop();
+
+    	state[current] = CLOSED;
+
+		// Go through the playable cells around us (one bit each)
+		for (mask = Grid.getNeighborMask(current); mask != 0; mask &= (mask - 1))
+		{
+			d = Integer.numberOfTrailingZeros(mask);
+			neighbor = current + Grid.getNeighborOffset(d);
+			movementCost = g[current] + (Grid.isDiagonal(d) ? DIAGONAL : STRAIGHT);
+
+			// First time we have seen this cell
+			if (!search.isVisited(neighbor))
+			{
+				search.visit(neighbor);
+				seen++;
+			}
+
+			// Already seen, only update it if this move is better
+			else if (movementCost >= g[neighbor]) continue;
+
+			// Store the new costs and parent
+			f[neighbor] = movementCost + estimate(neighbor, target);
+			g[neighbor] = movementCost;
+			search.parent[neighbor] = current;
+
+			// Lower it in place if it's open, otherwise (re)open it
+			if (state[neighbor] == OPEN) search.intHeap.decreaseKey(neighbor);
+			else
+			{
+				state[neighbor] = OPEN;
+				search.intHeap.push(neighbor);
+			}
+
+			// The other search has been here too, that makes a complete path
+			if (other.isVisited(neighbor) && (movementCost + other.g[neighbor] < best))
+			{
+				best = movementCost + other.g[neighbor];
+				meet = neighbor;
+			}
+		}
+
+		return seen;
+    }
+
+    // Hang the backward half of the best path off the forward search and build it
+    private Path joinPath()
+    {
+    	int previous = meet;
+
+    	// Walk from the meeting cell to the goal, making each cell a child of the one before
+    	for (int index = backward.parent[meet]; index >= 0; index = backward.parent[previous = index])
+    	{
+    		forward.visit(index);
+    		forward.g[index] = forward.g[previous] + step(previous, index);
+    		forward.f[index] = forward.g[index] + estimate(index, goal);
+    		forward.parent[index] = previous;
+    	}
+
+    	return buildPath(goal, forward);
+    }
+
+    // Perform clean-up operations when the final path is built
+    private void cleanUp()
+    {
+    	// Hand our workspaces back to the pool
+    	Workspace.release(forward);
+    	Workspace.release(backward);
+
+    	forward = backward = null;
+
+    	// Forget the start and goal so findPath() does nothing until newPath()
+    	start = goal = -1;
+    }
+
+    // Initialize pathFinder arrays
+    private void initialize()
+    {
+	    // Reuse our workspaces if we still have them, otherwise grab them from the pool
+    	if ((forward == null) || (forward.size() != Grid.getSize())) forward = Workspace.acquire();
+    	else forward.reset();
+
+    	if ((backward == null) || (backward.size() != Grid.getSize())) backward = Workspace.acquire();
+    	else backward.reset();
+
+    	path = Path.EMPTY;
+
+    	// Initialize variables
+    	best = NONE;
+    	meet = -1;
+    	expanded = expandedForward = expandedBackward = 0;
+    	needPath = true;
+    	isFinished = false;
+    }
+}
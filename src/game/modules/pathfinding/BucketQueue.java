@@ -0,0 +1,156 @@
+package game.modules.pathfinding;
+
+// A bucket (Dial) queue of Nodes ordered by totalCost. Costs are small
+// integers, so instead of sorting we keep one bucket per cost and file each
+// Node straight into its bucket, making push and decreaseKey O(1). The buckets
+// form a ring covering every cost from the lowest to the highest Node we hold;
+// in A* that spread is at most a couple of moves, so the ring stays small and
+// pop only has to walk forward past a few empty buckets. If the spread ever
+// outgrows the ring, the ring doubles in size.
+//
+// Each bucket is a doubly linked list running through the Nodes themselves,
+// so taking a Node out of the middle of one is O(1) as well.
+public final class BucketQueue
+{
+	private Node[] buckets = new Node[64];			// The first Node in each bucket (cost & mask picks the bucket)
+	private int mask = 63;							// buckets.length - 1
+	private int size = 0;							// The number of Nodes we hold
+	private int low = 0;							// No Node we hold costs less than this
+	private int high = 0;							// No Node we hold costs more than this
+
+    // The current size of the queue
+    public int size() {
+        return size;
+    }
+
+    // See if Node is in the queue
+    public boolean contains(Node node) {
+        return (node.getBucket() >= 0);
+    }
+
+    // Add a Node to the queue (the same as push, kept so the queue can stand in for a Heap)
+    public void add(Node node) {
+        push(node);
+    }
+
+    // Add a Node to the bucket for its totalCost
+    public void push(Node node)
+    {
+        int cost = node.totalCost();
+
+        // The first Node sets the window
+        if (size == 0) low = high = cost;
+
+        // Widen the window, and the ring with it if it no longer fits
+        if (cost < low) low = cost;
+        if (cost > high) high = cost;
+        while ((high - low) > mask) grow();
+
+        link(node, cost);
+        size++;
+    }
+
+    // A Node already in the queue has had its totalCost lowered, move it to its new bucket
+    public void decreaseKey(Node node)
+    {
+        // Not in the queue, push it instead
+        if (!contains(node)) push(node);
+
+        else
+        {
+            remove(node);
+            push(node);
+        }
+    }
+
+    // Take a Node out of the queue
+    public void remove(Node node)
+    {
+        if (!contains(node)) return;
+
+        unlink(node);
+        size--;
+    }
+
+    // Return the Node with the lowest totalCost and remove it
+    public Node pop()
+    {
+        // Nothing left in the queue
+        if (size == 0) return null;
+
+        // Walk forward to the first bucket with anything in it (each bucket in the window holds one cost)
+        while (buckets[low & mask] == null) low++;
+
+        Node node = buckets[low & mask];
+
+        unlink(node);
+        size--;
+
+        return node;
+    }
+
+    // Remove all Nodes from the queue
+    public void clear()
+    {
+        for (int b = 0; b < buckets.length; b++)
+        {
+            for (Node node = buckets[b], next; node != null; node = next)
+            {
+                next = node.getNext();
+                node.setLinks(-1, null, null);
+            }
+
+            buckets[b] = null;
+        }
+
+        size = 0;
+    }
+
+    /**
+     *
+     * Private Functions
+     *
+     **/
+
+    // Put a Node at the front of the bucket for cost
+    private void link(Node node, int cost)
+    {
+        Node first = buckets[cost & mask];
+
+        node.setLinks(cost, null, first);
+        if (first != null) first.setPrevious(node);
+
+        buckets[cost & mask] = node;
+    }
+
+    // Take a Node out of its bucket
+    private void unlink(Node node)
+    {
+        Node previous = node.getPrevious(), next = node.getNext();
+
+        if (previous != null) previous.setNext(next);
+        else buckets[node.getBucket() & mask] = next;
+
+        if (next != null) next.setPrevious(previous);
+
+        node.setLinks(-1, null, null);
+    }
+
+    // Double the ring, re-filing every Node under the new mask
+    private void grow()
+    {
+        Node[] old = buckets;
+
+        buckets = new Node[old.length * 2];
+        mask = buckets.length - 1;
+
+        for (int b = 0; b < old.length; b++)
+        {
+            for (Node node = old[b], next; node != null; node = next)
+            {
+                next = node.getNext();
+                link(node, node.getBucket());
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+
+// Wraps another engine with the PathCache: newPath() looks the path up first
+// and only hands the search to the engine if we don't already have it. Paths
+// the engine finishes are stored for the next entity that asks with the same
+// search mode.
+public final class CachingPathFinder extends PathFinder
+{
+	private PathFinder engine;						// The engine that does the searching
+	private int mode;								// The search mode the engine is for (see PathFinder)
+
+	private Cell start = null;						// The start cell
+	private Cell goal = null;						// The goal cell
+	private int version = 0;						// The map version the search started on
+
+	private boolean cached = false;					// Whether or not the path came from the cache
+	private boolean stored = false;					// Whether or not we have stored the engine's path
+
+    // Constructor
+    public CachingPathFinder(Entity entity, PathFinder engine, int mode)
+    {
+    	super(entity);
+
+    	this.engine = engine;
+    	this.mode = mode;
+    }
+
+    // Re-calculates the path with new start and goal cells
+    public void newPath(Cell start, Cell goal)
+    {
+    	this.start = start;
+    	this.goal = goal;
+    	this.version = Grid.getVersion();
+
+    	Path known = PathCache.get().lookup(start, goal, unitSize, mode);
+
+    	// We already know the way, there is nothing to search
+    	if (known != null)
+    	{
+    		path = known;
+    		expanded = 0;
+    		needPath = false;
+    		isFinished = true;
+    		cached = true;
+    		return;
+    	}
+
+    	cached = stored = false;
+
+    	engine.newPath(start, goal);
+    	update();
+    }
+
+    // Let the engine carry on with its search, keeping its path once it's done
+    public void findPath()
+    {
+    	if (cached) return;
+
+    	engine.findPath();
+    	update();
+    }
+
+    // Let the engine carry on with its search for at most steps steps, returns how many it took
+    public int findPath(int steps)
+    {
+    	if (cached) return 0;
+
+    	int taken = engine.findPath(steps);
+
+    	update();
+
+    	return taken;
+    }
+
+    // Whether or not the engine searches in findPath()
+    public boolean isIncremental() {
+    	return engine.isIncremental();
+    }
+
+    // Whether or not the engine weighs paths by terrain cost
+    public boolean usesTerrain() {
+    	return engine.usesTerrain();
+    }
+
+    // Number of steps to take per loop
+    public void setStepLimit(int steps)
+    {
+    	super.setStepLimit(steps);
+    	engine.setStepLimit(steps);
+    }
+
+    // How many cells across the entity is
+    public void setUnitSize(int cells)
+    {
+    	super.setUnitSize(cells);
+    	engine.setUnitSize(cells);
+    }
+
+    // Whether or not the engine's path so far is settled
+    public boolean isCommitted() {
+    	return (cached || engine.isCommitted());
+    }
+
+    // Whether or not the engine replaced our path with one from the entity's current location
+    public boolean pathRepaired() {
+    	return (!cached && engine.pathRepaired());
+    }
+
+    // Release anything the engine is holding
+    public void dispose() {
+    	engine.dispose();
+    }
+
+    // Return the engine doing the searching
+    public PathFinder getEngine() {
+    	return engine;
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Copy the engine's progress so our getters report it, keeping its path once it's done
+    private void update()
+    {
+    	path = engine.path;
+    	expanded = engine.expanded;
+    	needPath = engine.needPath;
+    	isFinished = engine.isFinished;
+
+    	// Only the path from the start we were given belongs under its key
+    	if (isFinished && !stored)
+    	{
+    		PathCache.get().store(start, goal, unitSize, mode, version, path);
+    		stored = true;
+    	}
+    }
+}
@@ -0,0 +1,282 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+
+// Windowed cooperative A* (WHCA*): entities plan around each other instead of
+// walking through each other. The search runs over (cell, tick) pairs for the
+// next WINDOW ticks of the Reservations clock, can wait in place as well as
+// move, and won't step onto a cell someone else has reserved for that tick or
+// swap places with anyone. The path it finds is reserved in turn, one slot per
+// tick, for whoever plans after us.
+//
+// The estimate is the exact distance to the goal with nobody else about, read
+// from the goal's shared FlowField, so the search only has to work out how to
+// get past the others inside the window. Every REPLAN ticks the window rolls
+// on: we give up our slots and plan the next WINDOW ticks from wherever we are
+// due to be, so no search ever looks further ahead than WINDOW ticks.
+public final class CooperativeAStar extends PathFinder
+{
+	public static final int WINDOW = 16;			// How many ticks each search plans ahead
+	public static final int REPLAN = WINDOW / 2;	// How many ticks of a plan we walk before planning again
+
+	// Cell states (states not yet seen by this search aren't visited in the workspace)
+	private static final byte OPEN		= 1;		// On the open list
+	private static final byte CLOSED	= 2;		// Already expanded
+
+	// The neighbor mask bit standing for waiting where we are (Grid only uses the first 8)
+	private static final int WAIT = 8;
+
+	// One space-time workspace per thread, shared by every cooperative search (it is WINDOW + 1
+	// times the size of the Grid, so the Workspace pool would drop it for every ordinary search)
+	private static final ThreadLocal<Workspace> spaceTime = new ThreadLocal<Workspace>();
+
+	private final int owner;						// Our id in the reservation table
+
+	private int goal = -1;							// The goal cell index (-1 = nothing to plan)
+	private int replanAt = Integer.MAX_VALUE;		// The tick to plan the next window on
+	private Path held = null;						// The path we hold reservations for
+
+    // Constructor
+    public CooperativeAStar(Entity entity)
+    {
+    	super(entity);
+
+    	owner = Reservations.get().newOwner();
+    }
+
+    // Re-calculates the path with new start and goal cells
+    public void newPath(Cell start, Cell goal)
+    {
+    	int from = Grid.indexOf(start.getR(), start.getC());
+
+    	// Give up anything we were holding for the old path
+    	release();
+
+    	this.goal = Grid.indexOf(goal.getR(), goal.getC());
+
+    	// Initialize variables
+    	path = Path.EMPTY;
+    	expanded = 0;
+    	needPath = true;
+    	isFinished = false;
+
+    	// Don't bother searching if the goal can't be reached
+    	if (rejectUnreachable(from, this.goal))
+    	{
+    		this.goal = -1;
+    		return;
+    	}
+
+    	plan(from, Reservations.get().now());
+    }
+
+    // Roll the window on once we have walked far enough into the last one
+    public void findPath()
+    {
+    	int now = Reservations.get().now();
+
+    	if ((goal < 0) || (now < replanAt)) return;
+
+    	// Plan on from wherever the path has us during this tick
+    	plan(path.getIndex(Math.min(now - path.getTick(0), path.size() - 1)), now);
+
+    	// The entity has to start following the new window from its first waypoint
+    	repaired = true;
+    }
+
+    // Searching happens in findPath(), but it is bounded by the window, so it doesn't need the PathScheduler
+    public boolean isIncremental() {
+    	return false;
+    }
+
+    // Each window is ours to walk as soon as it's planned (we plan the next one before we get to its end)
+    public boolean isCommitted() {
+    	return true;
+    }
+
+    // Give up our reservations, the engine won't be used again
+    public void dispose()
+    {
+    	release();
+    	goal = -1;
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Plan the next WINDOW ticks from cell index from, starting during tick now, and reserve them
+    private void plan(int from, int now)
+    {
+    	Reservations reservations = Reservations.get();
+    	Workspace workspace = workspace();
+    	int size = Grid.getSize();
+
+    	// Our old slots are only in the way now
+    	release();
+
+    	int best = search(from, now, workspace, reservations, FlowFields.get().field(Grid.getCell(goal)));
+
+    	// Boxed in for now (or the goal was cut off), stand still and try again next tick
+    	if (best < 0)
+    	{
+    		path = new Path(new int[] { from }, 0, now);
+    		replanAt = now + 1;
+    	}
+
+    	else
+    	{
+    		// One waypoint a tick, waits included, read back off the parents
+    		int[] cells = new int[(best / size) + 1];
+
+    		for (int state = best; state >= 0; state = workspace.parent[state])
+    			cells[state / size] = state % size;
+
+    		path = new Path(cells, workspace.g[best], now);
+
+    		// Reached the goal inside the window, there's nothing left to plan
+    		if (cells[cells.length - 1] == goal)
+    		{
+    			foundGoal();
+    			replanAt = Integer.MAX_VALUE;
+
+    			// DEBUG - write final path to file
+    			writePath(Grid.getCell(cells[0]), Grid.getCell(goal));
+    		}
+
+    		else replanAt = now + REPLAN;
+    	}
+
+    	// Hold every cell of the path for the tick we are due on it
+    	for (int n = 0; n < path.size(); n++) reservations.reserve(path.getIndex(n), path.getTick(n), owner);
+
+    	held = path;
+    }
+
+    // A* over (cell, tick) states from cell index from during tick now, returns the best state
+    // reaching the goal or the end of the window (state = ticks from now * Grid size + cell index),
+    // or -1 if there is nowhere to go
+    private int search(int from, int now, Workspace workspace, Reservations reservations, FlowField field)
+    {
+    	int size = Grid.getSize();
+    	int state, depth, cell, next, tick, d, other, movementCost;
+    	int[] g = workspace.g, f = workspace.f, parent = workspace.parent;
+    	byte[] visited = workspace.state;
+    	IntHeap openList = workspace.intHeap;
+
+    	// The map changed and cut us off from the goal
+    	if (field.distance(from) == FlowField.UNREACHABLE)
+    	{
+    		noPath();
+    		return -1;
+    	}
+
+    	// Add the start state to the openList
+    	workspace.visit(from);
+    	g[from] = 0;
+    	f[from] = field.distance(from);
+    	parent[from] = -1;
+    	visited[from] = OPEN;
+    	openList.push(from);
+
+    	while (openList.size() > 0)
+    	{
+    		// Set our current state to the one with the lowest totalCost
+    		state = openList.pop();
+    		visited[state] = CLOSED;
+
+    		depth = state / size;
+    		cell = state - (depth * size);
+
+    		// At the goal, or as far as the window goes
+    		if ((cell == goal) || (depth == WINDOW)) return state;
+
+    		tick = now + depth + 1;
+
+    		// Wait where we are, or step onto any playable cell around us (one bit each)
+    		for (int mask = Grid.getNeighborMask(cell) | (1 << WAIT); mask != 0; mask &= (mask - 1))
+    		{
+    			d = Integer.numberOfTrailingZeros(mask);
+    			next = ((d == WAIT) ? cell : cell + Grid.getNeighborOffset(d));
+
+    			// Too narrow for us (the goal is always fine, we stop there)
+    			if ((unitSize > 1) && (next != goal) && (Grid.getClearance(next) < unitSize)) continue;
+
+    			// Someone else will be standing there
+    			if (!reservations.isFree(next, tick, owner)) continue;
+
+    			// Someone is coming the other way: we would swap places in the middle of the move
+    			if ((next != cell) && ((other = reservations.owner(next, tick - 1)) != Reservations.FREE)
+    				&& (other != owner) && (reservations.owner(cell, tick) == other)) continue;
+
+    			// Someone is cutting across our diagonal the other way: we would meet in the middle
+    			if ((d != WAIT) && Grid.isDiagonal(d) && crosses(cell, d, tick, reservations)) continue;
+
+    			movementCost = g[state] + ((d == WAIT) ? STRAIGHT : (Grid.isDiagonal(d) ? DIAGONAL : STRAIGHT));
+    			next += (depth + 1) * size;
+
+    			// First time we have seen this state
+    			if (!workspace.isVisited(next))
+    			{
+    				workspace.visit(next);
+    				g[next] = Integer.MAX_VALUE;
+    				expanded++;
+    			}
+
+    			// Only update it if this move is better
+    			if ((visited[next] == CLOSED) || (movementCost >= g[next])) continue;
+
+    			g[next] = movementCost;
+    			f[next] = movementCost + field.distance(next % size);
+    			parent[next] = state;
+    			visited[next] = OPEN;
+    			openList.decreaseKey(next);
+    		}
+    	}
+
+    	return -1;
+    }
+
+    // Whether or not someone else moves across our diagonal move in direction d off cell index cell
+    // during tick (from one of the two cells beside it to the other)
+    private boolean crosses(int cell, int d, int tick, Reservations reservations)
+    {
+    	// The straight parts of the diagonal (directions are NW, N, NE, W, E, SW, S, SE)
+    	int vertical = cell + Grid.getNeighborOffset((d < 3) ? 1 : 6);
+    	int horizontal = cell + Grid.getNeighborOffset(((d == 0) || (d == 5)) ? 3 : 4);
+    	int other;
+
+    	if (((other = reservations.owner(vertical, tick - 1)) != Reservations.FREE) && (other != owner)
+    		&& (reservations.owner(horizontal, tick) == other)) return true;
+
+    	return (((other = reservations.owner(horizontal, tick - 1)) != Reservations.FREE) && (other != owner)
+    		&& (reservations.owner(vertical, tick) == other));
+    }
+
+    // Give up every slot we hold
+    private void release()
+    {
+    	if (held == null) return;
+
+    	for (int n = 0; n < held.size(); n++) Reservations.get().release(held.getIndex(n), held.getTick(n), owner);
+
+    	held = null;
+    }
+
+    // Return this thread's space-time workspace, ready for a new search
+    private static Workspace workspace()
+    {
+    	int size = (WINDOW + 1) * Grid.getSize();
+    	Workspace workspace = spaceTime.get();
+
+    	// None yet (or the map changed size), make a new one
+    	if ((workspace == null) || (workspace.size() != size)) spaceTime.set(workspace = new Workspace(size));
+    	else workspace.reset();
+
+    	return workspace;
+    }
+}
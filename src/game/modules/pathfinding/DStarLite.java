@@ -0,0 +1,374 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+import game.map.GridListener;
+
+import java.awt.Point;
+import java.util.Arrays;
+
+// D* Lite: searches backwards from the goal and keeps its search state after
+// the path is built. When cells change whether or not they are playable, only
+// the cells whose cost-to-goal is affected are repaired, and the path is rebuilt
+// from wherever the entity is standing instead of searching from scratch.
+//
+// Keys are two ints (see calculateKey) packed into a long so the open list can
+// compare them in one go.
+public final class DStarLite extends PathFinder implements GridListener
+{
+	private static final int INFINITY = Integer.MAX_VALUE / 4;		// Cost of anything we can't reach (safe to add to)
+
+	private int start = -1;							// The cell index we are planning from
+	private int goal = -1;							// The goal cell index
+	private int last = -1;							// Where we were planning from when the heuristic was last adjusted
+	private int km = 0;								// How much the heuristic has shifted since the search began
+
+	private int[] g = null;							// The cost to the goal of each cell
+	private int[] rhs = null;						// The one-step lookahead cost to the goal of each cell
+	private long[] key = null;						// The key each cell is sorted by on the open list
+	private IntHeap openList = null;				// Stores inconsistent cell indexes we have to check out
+
+	private int[] changes = new int[16];			// Cells that changed since the last repair
+	private int changeCount = 0;					// The number of cells in changes
+
+    // Constructor
+    public DStarLite(Entity entity) {
+    	super(entity);
+    }
+
+    // Re-calculates the path with new start and goal cells
+    public void newPath(Cell start, Cell goal)
+    {
+    	int from = Grid.indexOf(start.getR(), start.getC());
+    	int to = Grid.indexOf(goal.getR(), goal.getC());
+
+    	// Same goal on the same map, keep what we know and just plan from somewhere else
+    	if ((to == this.goal) && (g != null) && (g.length == Grid.getSize())) moveStart(from);
+
+    	// Otherwise start from scratch
+    	else initialize(from, to);
+
+    	// Hear about any cells changing from now on
+    	Grid.addListener(this);
+
+    	path = Path.EMPTY;
+    	expanded = 0;
+    	needPath = true;
+    	isFinished = false;
+    }
+
+    // Calculating the best path based on the start and goal cells given to newPath()
+    public void findPath()
+    {
+    	// Make sure we have starting and ending points and that we don't already have a path
+        if (!needPath || start < 0 || goal < 0) return;
+
+        // Fix up anything that changed since the last path, then plan from where we are now
+        if (changeCount > 0)
+        {
+        	if (isFinished) repaired = true;
+
+        	moveStart(currentIndex());
+        	applyChanges();
+        	expanded = 0;
+        }
+
+        // Not done yet, carry on next time
+        if (!computeShortestPath()) return;
+
+        // Walk down the cost-to-goal from the start
+        path = extractPath();
+
+        // Entity is unable to move to goal (path blocked), wait for the map to change
+        if (path == null)
+        {
+        	path = Path.EMPTY;
+        	noPath();
+        	needPath = false;
+        	return;
+        }
+
+        foundGoal();
+
+    	// DEBUG - write final path to file
+    	writePath(Grid.getCell(start), Grid.getCell(goal));
+    }
+
+    // Stop hearing about cell changes, this engine won't be used again
+    public void dispose()
+    {
+    	Grid.removeListener(this);
+
+    	g = rhs = null;
+    	key = null;
+    	openList = null;
+    	start = goal = -1;
+    }
+
+    // A cell changed whether or not it is playable, remember it for the next repair
+    public void cellChanged(Cell cell)
+    {
+    	if (goal < 0) return;
+
+    	// Make room for another change
+    	if (changeCount == changes.length) changes = Arrays.copyOf(changes, changeCount * 2);
+
+    	changes[changeCount++] = Grid.indexOf(cell.getR(), cell.getC());
+
+    	// We need to repair our path
+    	needPath = true;
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // The key of cell index: the smaller of g and rhs plus the heuristic, then the smaller of g and rhs
+    private long calculateKey(int index)
+    {
+    	long cost = Math.min(g[index], rhs[index]);
+
+    	return ((cost + estimate(start, index) + km) << 32) | cost;
+    }
+
+    // Work out the rhs of cell index from its neighbors
+    private int lookahead(int index)
+    {
+    	if (index == goal) return 0;
+
+    	int best = INFINITY, d;
+
+    	// We can't get anywhere from a blocked cell
+    	if (!Grid.isPlayable(Grid.rowFromIndex(index), Grid.columnFromIndex(index))) return best;
+
+		// Find the best of the playable cells around us to move through
+		for (int mask = Grid.getNeighborMask(index); mask != 0; mask &= (mask - 1))
+		{
+			d = Integer.numberOfTrailingZeros(mask);
+			best = Math.min(best, (Grid.isDiagonal(d) ? DIAGONAL : STRAIGHT) + g[index + Grid.getNeighborOffset(d)]);
+		}
+
+		return Math.min(best, INFINITY);
+    }
+
+    // Put cell index on the open list if it is inconsistent, take it off otherwise
+    private void updateVertex(int index)
+    {
+    	if (g[index] != rhs[index])
+    	{
+    		key[index] = calculateKey(index);
+    		openList.update(index);
+    	}
+
+    	else if (openList.contains(index)) openList.remove(index);
+    }
+
+    // Expand inconsistent cells until the start is consistent, returns false if we hit our step limit first
+    private boolean computeShortestPath()
+    {
+    	int steps = 0;						// Used to count the number of steps taken per method call
+    	int current, r, c, neighbor;		// The cell we are working on, its location and its neighbor
+    	int step, old;						// The cost of moving to a neighbor and the old g of current
+    	long newKey;						// The up to date key of current
+
+        while ((openList.size() > 0) && ((key[openList.peek()] < calculateKey(start)) || (rhs[start] > g[start])))
+        {
+        	current = openList.peek();
+        	newKey = calculateKey(current);
+        	r = Grid.rowFromIndex(current);
+        	c = Grid.columnFromIndex(current);
+
+        	// Its key is out of date since the heuristic shifted, re-sort it
+        	if (key[current] < newKey)
+        	{
+        		key[current] = newKey;
+        		openList.update(current);
+        		continue;
+        	}
+
+        	// Overconsistent: its cost went down, pass it on to the surrounding cells
+        	if (g[current] > rhs[current])
+        	{
+        		g[current] = rhs[current];
+        		openList.remove(current);
+
+        		// (a finite rhs means current is playable, so its mask is good)
+        		for (int mask = Grid.getNeighborMask(current); mask != 0; mask &= (mask - 1))
+        		{
+        			step = Grid.isDiagonal(Integer.numberOfTrailingZeros(mask)) ? DIAGONAL : STRAIGHT;
+        			neighbor = current + Grid.getNeighborOffset(Integer.numberOfTrailingZeros(mask));
+
+        			if ((neighbor != goal) && (step + g[current] < rhs[neighbor]))
+        			{
+        				rhs[neighbor] = step + g[current];
+        				updateVertex(neighbor);
+        			}
+        		}
+        	}
+
+        	// Underconsistent: its cost went up, anything that went through it has to look again
+        	else
+        	{
+        		old = g[current];
+        		g[current] = INFINITY;
+        		updateVertex(current);
+
+        		for (int nr = r - 1; nr <= r + 1; nr++)
+        		{
+        			for (int nc = c - 1; nc <= c + 1; nc++)
+        			{
+        				if (((nr == r) && (nc == c)) || !Grid.contains(nr, nc)) continue;
+
+        				neighbor = Grid.indexOf(nr, nc);
+
+        				// Only neighbors whose best move was through current are affected
+        				if ((neighbor != goal) && (rhs[neighbor] >= old + (((nr != r) && (nc != c)) ? DIAGONAL : STRAIGHT)))
+        				{
+        					rhs[neighbor] = lookahead(neighbor);
+        					updateVertex(neighbor);
+        				}
+        			}
+        		}
+        	}
+
+        	// Increase steps taken on this loop
+        	expanded++;
+        	steps++;
+
+        	if (reachedLimit(steps)) return false;
+        }
+
+        return true;
+    }
+
+    // Follow the best moves from the start to the goal, returns null if the goal can't be reached
+    private Path extractPath()
+    {
+    	if (rhs[start] >= INFINITY) return null;
+
+    	// Borrow a workspace to hold the path so PathFinder can smooth it
+    	Workspace workspace = Workspace.acquire();
+    	int current = start, next, neighbor, step, best;
+
+    	workspace.visit(start);
+    	workspace.g[start] = workspace.f[start] = 0;
+    	workspace.parent[start] = -1;
+
+    	while (current != goal)
+    	{
+    		next = -1;
+    		best = INFINITY;
+
+    		// Move to whichever neighbor leaves us closest to the goal
+    		for (int mask = Grid.getNeighborMask(current); mask != 0; mask &= (mask - 1))
+    		{
+    			step = Grid.isDiagonal(Integer.numberOfTrailingZeros(mask)) ? DIAGONAL : STRAIGHT;
+    			neighbor = current + Grid.getNeighborOffset(Integer.numberOfTrailingZeros(mask));
+
+    			if (step + g[neighbor] < best)
+    			{
+    				best = step + g[neighbor];
+    				next = neighbor;
+    			}
+    		}
+
+    		// Dead end, or we are going round in circles
+    		if ((next < 0) || workspace.isVisited(next))
+    		{
+    			Workspace.release(workspace);
+    			return null;
+    		}
+
+    		workspace.visit(next);
+    		workspace.g[next] = workspace.f[next] = workspace.g[current] + estimate(current, next);
+    		workspace.parent[next] = current;
+    		current = next;
+    	}
+
+    	Path smoothed = buildPath(goal, workspace);
+    	Workspace.release(workspace);
+
+    	return smoothed;
+    }
+
+    // Plan from cell index from now on, shifting the heuristic instead of re-sorting the open list
+    private void moveStart(int index)
+    {
+    	start = index;
+    	km += estimate(last, start);
+    	last = start;
+    }
+
+    // The cell index the entity is standing on (or the old start if it isn't on the grid)
+    private int currentIndex()
+    {
+    	Point cell = entity.getCellLocation();
+
+    	if ((cell == null) || !Grid.contains(cell.x, cell.y)) return start;
+
+    	return Grid.indexOf(cell.x, cell.y);
+    }
+
+    // Recalculate the rhs of every changed cell and the cells around it
+    private void applyChanges()
+    {
+    	int r, c;
+
+    	for (int i = 0; i < changeCount; i++)
+    	{
+    		r = Grid.rowFromIndex(changes[i]);
+    		c = Grid.columnFromIndex(changes[i]);
+
+    		// Only edges touching the changed cell changed cost
+    		for (int nr = r - 1; nr <= r + 1; nr++)
+    		{
+    			for (int nc = c - 1; nc <= c + 1; nc++)
+    			{
+    				if (!Grid.contains(nr, nc)) continue;
+
+    				int neighbor = Grid.indexOf(nr, nc);
+
+    				if (neighbor != goal)
+    				{
+    					rhs[neighbor] = lookahead(neighbor);
+    					updateVertex(neighbor);
+    				}
+    			}
+    		}
+    	}
+
+    	changeCount = 0;
+    }
+
+    // Start a brand new search towards goal
+    private void initialize(int from, int to)
+    {
+    	int size = Grid.getSize();
+
+    	// Make new arrays if the map changed size
+    	if ((g == null) || (g.length != size))
+    	{
+    		g = new int[size];
+    		rhs = new int[size];
+    		key = new long[size];
+    		openList = new IntHeap(size, key);
+    	}
+
+    	Arrays.fill(g, INFINITY);
+    	Arrays.fill(rhs, INFINITY);
+    	openList.clear();
+
+    	start = last = from;
+    	goal = to;
+    	km = 0;
+    	changeCount = 0;
+
+    	// The search grows backwards out of the goal
+    	rhs[goal] = 0;
+    	key[goal] = calculateKey(goal);
+    	openList.push(goal);
+    }
+}
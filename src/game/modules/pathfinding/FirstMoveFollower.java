@@ -0,0 +1,157 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+
+import java.util.Arrays;
+
+// Follows the FirstMoves table instead of searching: every step of the path is
+// a single lookup of the first move from where we are to the goal, so there is
+// no open list, no expansions and no per-search memory beyond the path itself.
+// Until the table for the current map is ready (or for entities too big for a
+// single cell, which the table knows nothing about) the search is handed to an
+// ArrayAStar, which weighs moves the same way the table does.
+public final class FirstMoveFollower extends PathFinder
+{
+	private PathFinder fallback;					// Searches for us while there is no table
+
+	private int start = -1;							// The start cell index
+	private int goal = -1;							// The goal cell index
+	private FirstMoves.Table table = null;			// The table for this path (null = the fallback has it)
+
+    // Constructor
+    public FirstMoveFollower(Entity entity)
+    {
+    	super(entity);
+
+    	fallback = new ArrayAStar(entity);
+    }
+
+    // Re-calculates the path with new start and goal cells
+    public void newPath(Cell start, Cell goal)
+    {
+    	this.start = Grid.indexOf(start.getR(), start.getC());
+    	this.goal = Grid.indexOf(goal.getR(), goal.getC());
+
+    	// Use the table if it is ready for this map (otherwise this starts it building)
+    	table = ((unitSize == 1) ? FirstMoves.get().table() : null);
+
+    	// No table yet, search the usual way
+    	if (table == null)
+    	{
+    		fallback.newPath(start, goal);
+    		update();
+    		return;
+    	}
+
+    	path = Path.EMPTY;
+
+    	// Initialize variables
+    	expanded = 0;
+    	needPath = true;
+    	isFinished = false;
+
+    	// Don't bother looking if the goal can't be reached (the table only knows reachable goals)
+    	if (rejectUnreachable(this.start, this.goal)) this.start = -1;
+    }
+
+    // Follow the table from the start to the goal
+    public void findPath()
+    {
+    	if (table == null)
+    	{
+    		fallback.findPath();
+    		update();
+    		return;
+    	}
+
+    	// Make sure we have starting and ending points and that we don't already have a path
+    	if (!needPath || start < 0) return;
+
+    	// Room for a straight run across the map, grown if the path winds about more than that
+    	int[] cells = new int[Math.max(Grid.getRows(), Grid.getColumns()) + 1];
+    	int count = 0, current = start;
+
+    	cells[count++] = start;
+
+    	// One lookup per step until we reach the goal (never more steps than there are cells)
+    	while ((current != goal) && (count <= Grid.getSize()))
+    	{
+    		current += Grid.getNeighborOffset(table.move(current, goal));
+
+    		if (count == cells.length) cells = Arrays.copyOf(cells, count * 2);
+    		cells[count++] = current;
+    	}
+
+    	path = buildPath(Arrays.copyOf(cells, count));
+    	foundGoal();
+
+    	// DEBUG - write final path to file
+    	writePath(Grid.getCell(start), Grid.getCell(goal));
+
+    	// Forget the start and goal so findPath() does nothing until newPath()
+    	start = goal = -1;
+    }
+
+    // Let the fallback carry on with its search for at most steps steps, returns how many it took
+    public int findPath(int steps)
+    {
+    	// A table path is found in one go, there are no steps to count
+    	if (table != null)
+    	{
+    		findPath();
+    		return 0;
+    	}
+
+    	int taken = fallback.findPath(steps);
+
+    	update();
+
+    	return taken;
+    }
+
+    // Only the fallback searches in findPath()
+    public boolean isIncremental() {
+    	return (table == null);
+    }
+
+    // Whether or not the path so far is settled (a table path is done as soon as it's found)
+    public boolean isCommitted() {
+    	return ((table != null) ? isFinished : fallback.isCommitted());
+    }
+
+    // Number of steps to take per loop
+    public void setStepLimit(int steps)
+    {
+    	super.setStepLimit(steps);
+    	fallback.setStepLimit(steps);
+    }
+
+    // How many cells across the entity is
+    public void setUnitSize(int cells)
+    {
+    	super.setUnitSize(cells);
+    	fallback.setUnitSize(cells);
+    }
+
+    // Release anything the fallback is holding
+    public void dispose() {
+    	fallback.dispose();
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Copy the fallback's progress so our getters report it
+    private void update()
+    {
+    	path = fallback.path;
+    	expanded = fallback.expanded;
+    	needPath = fallback.needPath;
+    	isFinished = fallback.isFinished;
+    }
+}
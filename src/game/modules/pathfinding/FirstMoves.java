@@ -0,0 +1,434 @@
+package game.modules.pathfinding;
+
+import game.map.Grid;
+import game.map.GridView;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// A compressed path database: for every source cell, the first move of an
+// optimal path to every target cell, so finding a path is just one table
+// lookup per step with no search at all. Each source's row (its first move to
+// every target, in cell index order) is stored as runs of the same move, and
+// cells no query can ask about (blocked cells, the source itself) join
+// whichever run they sit in, which keeps rows down to a few runs on our maps.
+//
+// Rows are found with one Dijkstra per source, split across a ForkJoinPool
+// from a ViewBuilder. The table for the map as it was loaded is saved
+// next to the map file and loaded from there next time if the map is still
+// laid out the same; tables for layouts edited mid-round are only kept in
+// memory. Like the Landmarks tables, a table only counts for the map version it
+// was built for; table() returns null until one is ready, and queues a new
+// build whenever the map has changed (unless it has changed back to a layout we
+// have a table for). A build the map has moved on from is dropped part way.
+public final class FirstMoves
+{
+	// The file format
+	private static final int MAGIC = 0x43504431;	// "CPD1"
+
+	// How many sources each worker takes on at a time
+	private static final int SOURCES = 16;
+
+	// The single table
+	private static FirstMoves firstMoves = null;
+
+	private volatile Table table = null;			// The newest finished table
+	private String file = null;						// Where the table is saved (null = nowhere)
+	private long saved = 0;							// The layout open() loaded, the only one kept in file
+	private int builds = 0;							// How many tables have been built (not loaded)
+
+	// Finds the table for the newest map
+	private final ViewBuilder builder = new ViewBuilder("FirstMoves") {
+		protected void build(GridView view) {
+			find(view);
+		}
+	};
+
+	// A finished table for one map layout, nothing in it changes once built
+	static final class Table
+	{
+		final int version;							// The Grid version the table is good for
+		final long layout;							// The layout it was built for (see fingerprint)
+		final int[][] runs;							// Each source's runs, (first target << 3) | move, in target order
+
+		Table(int version, long layout, int[][] runs)
+		{
+			this.version = version;
+			this.layout = layout;
+			this.runs = runs;
+		}
+
+	    // The direction of the first move from cell index source towards cell index target
+	    // (see Grid.getNeighborOffset), target must be reachable and not source itself
+	    int move(int source, int target)
+	    {
+	    	int[] row = runs[source];
+	    	int low = 0, high = row.length - 1, middle;
+
+	    	// Find the last run starting at or before target
+	    	while (low < high)
+	    	{
+	    		middle = (low + high + 1) >>> 1;
+
+	    		if ((row[middle] >>> 3) <= target) low = middle;
+	    		else high = middle - 1;
+	    	}
+
+	    	return (row[low] & 7);
+	    }
+
+	    // The total number of runs kept
+	    int size()
+	    {
+	    	int size = 0;
+
+	    	for (int source = 0; source < runs.length; source++) size += runs[source].length;
+
+	    	return size;
+	    }
+	}
+
+	// Works out the rows for a range of sources, splitting it in half until each worker has a few
+	private static final class Rows extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final GridView view;
+		private final int[][] runs;
+		private final int from, to;
+
+		Rows(GridView view, int[][] runs, int from, int to)
+		{
+			this.view = view;
+			this.runs = runs;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute()
+		{
+			// A newer map is waiting, this table will never be used
+			if (firstMoves.builder.isStale()) return;
+
+			// Few enough to do here, sharing one set of search arrays between them
+			if (to - from <= SOURCES)
+			{
+				int[] cost = new int[view.getSize()];
+				byte[] first = new byte[view.getSize()];
+				IntHeap openList = new IntHeap(view.getSize(), cost);
+
+				for (int source = from; source < to; source++) runs[source] = row(view, source, cost, first, openList);
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+
+			invokeAll(new Rows(view, runs, from, middle), new Rows(view, runs, middle, to));
+		}
+	}
+
+    // Constructor
+    private FirstMoves() {}
+
+    // Return the first-move table
+    public static synchronized FirstMoves get()
+    {
+    	if (firstMoves == null) firstMoves = new FirstMoves();
+
+    	return firstMoves;
+    }
+
+    // The map in mapFile has just been loaded: use the table saved next to it if it is for
+    // this layout, otherwise build one in the background and save it there (game thread only)
+    public void open(String mapFile)
+    {
+    	GridView view = Grid.getView();
+
+    	synchronized (this)
+    	{
+    		file = mapFile.replaceFirst("\\.xml$", "") + ".cpd";
+    		saved = fingerprint(view);
+    	}
+
+    	builder.queue(view);
+    }
+
+    // Whether or not the table for the current map is ready (game thread only)
+    public boolean isReady() {
+    	return (table() != null);
+    }
+
+    // Return how many tables have been built rather than loaded
+    public int getBuilds() {
+    	return builds;
+    }
+
+    // Return the number of runs in the current table (0 if there isn't one)
+    public int getRuns()
+    {
+    	Table current = table;
+
+    	return ((current == null) ? 0 : current.size());
+    }
+
+    // Return the table for the current map, or null if it isn't ready yet, starting
+    // a build in the background if there isn't one for this map already (game thread only)
+    Table table()
+    {
+    	Table current = table;
+
+    	if ((current != null) && (current.version == Grid.getVersion())) return current;
+
+    	builder.update();
+
+    	return null;
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Find the table for view, from the one we have, the saved file or from scratch (runs on the builder)
+    private void find(GridView view)
+    {
+    	long layout = fingerprint(view);
+    	Table current = table;
+    	Table result = null;
+    	String saveTo;
+
+    	synchronized (this) {
+    		saveTo = ((layout == saved) ? file : null);
+    	}
+
+    	// The map changed back to the layout we already have a table for
+    	if ((current != null) && (current.layout == layout)) result = new Table(view.getVersion(), layout, current.runs);
+
+    	// Saved last time (the file only ever holds the layout open() loaded)
+    	if ((result == null) && (saveTo != null)) result = read(saveTo, view, layout);
+
+    	// Nothing for it but to work it out
+    	if (result == null)
+    	{
+    		result = compute(view, layout);
+
+    		// The map moved on while we were at it
+    		if (result == null) return;
+
+    		built();
+
+    		if (saveTo != null) write(saveTo, view, result);
+    	}
+
+    	finished(view, result);
+    }
+
+    // A table is ready, keep it unless a newer one has already finished
+    private synchronized void finished(GridView view, Table result)
+    {
+    	if ((table == null) || (table.version < result.version)) table = result;
+    	builder.done(view);
+    }
+
+    // Count a table that had to be built
+    private synchronized void built() {
+    	builds++;
+    }
+
+    // Work out every source's row in parallel, or null if a newer map came along first (runs on the builder)
+    private static Table compute(GridView view, long layout)
+    {
+    	int[][] runs = new int[view.getSize()][];
+
+    	ForkJoinPool.commonPool().invoke(new Rows(view, runs, 0, runs.length));
+
+    	// Workers that saw the newer map left their rows out
+    	for (int source = 0; source < runs.length; source++) if (runs[source] == null) return null;
+
+    	return new Table(view.getVersion(), layout, runs);
+    }
+
+    // The compressed row for cell index source: Dijkstra out of it, remembering which
+    // way each cell was first reached from the source, then run-length encoded
+    private static int[] row(GridView view, int source, int[] cost, byte[] first, IntHeap openList)
+    {
+    	int size = view.getSize();
+    	int current, neighbor, r, c, d, movementCost, count = 0, move = -1;
+    	int[] row;
+
+    	Arrays.fill(cost, Integer.MAX_VALUE);
+    	Arrays.fill(first, (byte) -1);
+    	openList.clear();
+
+    	// A blocked source never starts a path, every target gets the same (unused) move
+    	if (view.isPlayable(view.rowFromIndex(source), view.columnFromIndex(source)))
+    	{
+    		cost[source] = 0;
+    		openList.push(source);
+    	}
+
+    	while (openList.size() > 0)
+    	{
+    		current = openList.pop();
+    		r = view.rowFromIndex(current);
+    		c = view.columnFromIndex(current);
+
+    		// Search the surrounding 8 cells (in Grid's neighbor order: NW, N, NE, W, E, SW, S, SE)
+    		for (d = 0; d < 8; d++)
+    		{
+    			int nr = r + ((d < 3) ? -1 : ((d > 4) ? 1 : 0));
+    			int nc = c + (((d == 0) || (d == 3) || (d == 5)) ? -1 : (((d == 2) || (d == 4) || (d == 7)) ? 1 : 0));
+
+    			if (!view.isPlayable(nr, nc)) continue;
+
+    			neighbor = view.indexOf(nr, nc);
+    			movementCost = cost[current] + (((nr != r) && (nc != c)) ? PathFinder.DIAGONAL : PathFinder.STRAIGHT);
+
+    			if (movementCost >= cost[neighbor]) continue;
+
+    			// The first step towards neighbor is the first step towards whatever we came through
+    			cost[neighbor] = movementCost;
+    			first[neighbor] = ((current == source) ? (byte) d : first[current]);
+    			openList.decreaseKey(neighbor);
+    		}
+    	}
+
+    	// Count the runs (cells with no move of their own carry on the run they are in)
+    	for (int target = 0; target < size; target++)
+    	{
+    		if ((first[target] < 0) || (first[target] == move)) continue;
+
+    		move = first[target];
+    		count++;
+    	}
+
+    	row = new int[Math.max(1, count)];
+    	count = 0;
+    	move = -1;
+
+    	// The first run starts at cell 0 whatever its first real move is
+    	for (int target = 0; target < size; target++)
+    	{
+    		if ((first[target] < 0) || (first[target] == move)) continue;
+
+    		row[count] = (((count == 0) ? 0 : target) << 3) | first[target];
+    		move = first[target];
+    		count++;
+    	}
+
+    	return row;
+    }
+
+    // A hash of the map's size and which cells are playable, the same from one run of the game to the next
+    private static long fingerprint(GridView view)
+    {
+    	long hash = 0xCBF29CE484222325L;
+
+    	hash = (hash ^ view.getRows()) * 0x100000001B3L;
+    	hash = (hash ^ view.getColumns()) * 0x100000001B3L;
+
+    	for (int index = 0; index < view.getSize(); index++)
+    		hash = (hash ^ (view.isPlayable(view.rowFromIndex(index), view.columnFromIndex(index)) ? 1 : 0)) * 0x100000001B3L;
+
+    	return hash;
+    }
+
+    // Load the table saved in file, or null if there isn't one for this layout
+    private static Table read(String file, GridView view, long layout)
+    {
+    	DataInputStream in = null;
+
+    	try
+    	{
+    		in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+    		// Not ours, or saved for a different layout
+    		if ((in.readInt() != MAGIC) || (in.readLong() != layout) || (in.readInt() != view.getSize())) return null;
+
+    		int[][] runs = new int[view.getSize()][];
+    		int count;
+
+    		for (int source = 0; source < runs.length; source++)
+    		{
+    			// Every row has at least one run and never more than there are targets
+    			count = in.readInt();
+
+    			if ((count < 1) || (count > runs.length)) return null;
+
+    			runs[source] = new int[count];
+
+    			for (int run = 0; run < count; run++) runs[source][run] = in.readInt();
+    		}
+
+    		// Anything left over means the file isn't the table we think it is
+    		if (in.read() != -1) return null;
+
+    		return new Table(view.getVersion(), layout, runs);
+    	}
+
+    	// Missing or cut short, build it instead
+    	catch (IOException e) {
+    		return null;
+    	}
+
+    	finally
+    	{
+    		try { if (in != null) in.close(); }
+    		catch (IOException e) {}
+    	}
+    }
+
+    // Save table to file for next time (written alongside first, so file is never left half written)
+    private static void write(String file, GridView view, Table table)
+    {
+    	File temp = new File(file + ".tmp");
+    	DataOutputStream out = null;
+
+    	try
+    	{
+    		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+
+    		out.writeInt(MAGIC);
+    		out.writeLong(table.layout);
+    		out.writeInt(view.getSize());
+
+    		for (int source = 0; source < table.runs.length; source++)
+    		{
+    			out.writeInt(table.runs[source].length);
+
+    			for (int run = 0; run < table.runs[source].length; run++) out.writeInt(table.runs[source][run]);
+    		}
+
+    		out.close();
+    		out = null;
+
+    		// Swap the finished file in
+    		Files.move(temp.toPath(), new File(file).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    	}
+
+    	// Could not write to file, we'll just build it again next time
+    	catch (IOException e)
+    	{
+    		System.out.println("Could not write to file: " + file);
+    		temp.delete();
+    	}
+
+    	finally
+    	{
+    		try { if (out != null) out.close(); }
+    		catch (IOException e) {}
+    	}
+    }
+}
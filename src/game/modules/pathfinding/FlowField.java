@@ -0,0 +1,108 @@
+package game.modules.pathfinding;
+
+import game.map.Grid;
+
+import java.util.Arrays;
+
+// The distance to one goal cell from every cell of the Grid, and which way to
+// step from each cell to get there. It is built once by a reverse Dijkstra
+// out of the goal, after which any number of entities can follow it with one
+// lookup per step. FlowFields keeps them cached per goal.
+public final class FlowField
+{
+	public static final int UNREACHABLE = Integer.MAX_VALUE;	// The distance of cells that can't reach the goal
+
+	// No move (directions are the same as Grid's neighbor mask bits)
+	private static final byte NONE = -1;
+
+	private final int goal;							// The goal cell index
+	private final int[] distance;					// The cost of walking to the goal from each cell
+	private final byte[] direction;					// The direction to step from each cell
+	private int expanded = 0;						// How many cells the build expanded
+
+    // Constructor, builds the field for goal cell index
+    FlowField(int goal)
+    {
+    	this.goal = goal;
+
+    	distance = new int[Grid.getSize()];
+    	direction = new byte[Grid.getSize()];
+
+    	build();
+    }
+
+    // Return the goal cell index
+    public int getGoal() {
+    	return goal;
+    }
+
+    // Return how many cells were expanded building this field
+    public int getExpanded() {
+    	return expanded;
+    }
+
+    // Return the number of cells this field covers
+    public int size() {
+    	return distance.length;
+    }
+
+    // Return the cost of walking from cell index to the goal (or UNREACHABLE)
+    public int distance(int index) {
+    	return distance[index];
+    }
+
+    // Return the cell index to step to from cell index (or -1 at the goal or if it can't be reached)
+    public int next(int index)
+    {
+    	int d = direction[index];
+
+    	if (d == NONE) return -1;
+
+    	return index + Grid.getNeighborOffset(d);
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Run Dijkstra backwards out of the goal over the whole grid
+    private void build()
+    {
+    	int current, neighbor, d, movementCost;
+    	boolean[] closed = new boolean[distance.length];
+    	IntHeap openList = new IntHeap(distance.length, distance);
+
+    	Arrays.fill(distance, UNREACHABLE);
+    	Arrays.fill(direction, NONE);
+
+    	// We can't walk to a blocked goal
+    	if (!Grid.isPlayable(Grid.rowFromIndex(goal), Grid.columnFromIndex(goal))) return;
+
+    	distance[goal] = 0;
+    	openList.push(goal);
+
+    	while (openList.size() > 0)
+    	{
+    		current = openList.pop();
+    		closed[current] = true;
+    		expanded++;
+
+    		// Anything around us that is playable can step onto us, and reach the goal through us
+    		for (int mask = Grid.getNeighborMask(current); mask != 0; mask &= (mask - 1))
+    		{
+    			d = Integer.numberOfTrailingZeros(mask);
+    			neighbor = current + Grid.getNeighborOffset(d);
+    			movementCost = distance[current] + (Grid.isDiagonal(d) ? PathFinder.DIAGONAL : PathFinder.STRAIGHT);
+
+    			if (closed[neighbor] || (movementCost >= distance[neighbor])) continue;
+
+    			// The neighbor steps back the opposite way to get here
+    			distance[neighbor] = movementCost;
+    			direction[neighbor] = (byte) (7 - d);
+    			openList.decreaseKey(neighbor);
+    		}
+    	}
+    }
+}
@@ -0,0 +1,69 @@
+package game.modules.pathfinding;
+
+import game.map.Cell;
+import game.map.Grid;
+import game.map.GridListener;
+
+import java.util.HashMap;
+
+// The flow fields built so far, one per goal cell. Entities heading for the
+// same goal all share its field, so a crowd costs one search instead of one
+// each. Every field is thrown away as soon as any cell changes, and rebuilt
+// the next time it is asked for.
+public final class FlowFields implements GridListener
+{
+	// The single cache for the current Grid
+	private static FlowFields flowFields = null;
+
+	private Object builtFor = null;					// The Grid cell list the fields were built for
+	private HashMap<Integer, FlowField> fields = new HashMap<Integer, FlowField>();	// The fields, by goal cell index
+
+	private int builds = 0;							// How many fields have been built
+
+    // Constructor
+    private FlowFields() {}
+
+    // Return the cache for the current Grid
+    public static synchronized FlowFields get()
+    {
+    	if (flowFields == null)
+    	{
+    		flowFields = new FlowFields();
+    		Grid.addListener(flowFields);
+    	}
+
+    	return flowFields;
+    }
+
+    // Return the field leading to goal, building it if we don't have it yet
+    public synchronized FlowField field(Cell goal)
+    {
+    	// A new map was loaded, everything we have is for the old one
+    	if (builtFor != Grid.getCells())
+    	{
+    		fields.clear();
+    		builtFor = Grid.getCells();
+    	}
+
+    	Integer index = Grid.indexOf(goal.getR(), goal.getC());
+    	FlowField field = fields.get(index);
+
+    	if (field == null)
+    	{
+    		fields.put(index, field = new FlowField(index));
+    		builds++;
+    	}
+
+    	return field;
+    }
+
+    // Return how many fields have been built
+    public int getBuilds() {
+    	return builds;
+    }
+
+    // A cell changed, none of our fields are right anymore
+    public synchronized void cellChanged(Cell cell) {
+    	fields.clear();
+    }
+}
@@ -0,0 +1,83 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+
+// Follows the shared flow field for the goal instead of searching: every step
+// of the path is a single lookup, and only the first entity heading for a goal
+// pays for building its field (see FlowFields).
+public final class FlowFollower extends PathFinder
+{
+	private int start = -1;							// The start cell index
+	private Cell goal = null;						// The goal cell
+
+    // Constructor
+    public FlowFollower(Entity entity) {
+    	super(entity);
+    }
+
+    // Re-calculates the path with new start and goal cells
+    public void newPath(Cell start, Cell goal)
+    {
+    	this.start = Grid.indexOf(start.getR(), start.getC());
+    	this.goal = goal;
+
+    	path = Path.EMPTY;
+
+    	// Initialize variables
+    	expanded = 0;
+    	needPath = true;
+    	isFinished = false;
+    }
+
+    // Follow the flow field from the start to the goal
+    public void findPath()
+    {
+    	// Make sure we have starting and ending points and that we don't already have a path
+        if (!needPath || start < 0 || goal == null) return;
+
+        FlowFields cache = FlowFields.get();
+        int builds = cache.getBuilds();
+        FlowField field = cache.field(goal);
+
+        // We were the ones who had to build it
+        if (cache.getBuilds() != builds) expanded = field.getExpanded();
+
+        // Entity is unable to move to goal (path blocked)
+        if (field.distance(start) == FlowField.UNREACHABLE)
+        {
+        	noPath();
+        	return;
+        }
+
+        // Borrow a workspace to hold the path so PathFinder can smooth it
+        Workspace workspace = Workspace.acquire();
+        int current = start, next;
+
+        workspace.visit(start);
+        workspace.g[start] = workspace.f[start] = 0;
+        workspace.parent[start] = -1;
+
+        // Step down the field until we reach the goal
+        while ((next = field.next(current)) >= 0)
+        {
+        	workspace.visit(next);
+        	workspace.g[next] = workspace.f[next] = field.distance(start) - field.distance(next);
+        	workspace.parent[next] = current;
+        	current = next;
+        }
+
+        path = buildPath(current, workspace);
+        foundGoal();
+
+    	// DEBUG - write final path to file
+    	writePath(Grid.getCell(start), goal);
+
+    	// Hand the workspace back and forget the start and goal so findPath() does nothing until newPath()
+    	Workspace.release(workspace);
+
+    	start = -1;
+    	goal = null;
+    }
+}
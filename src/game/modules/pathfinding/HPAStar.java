@@ -0,0 +1,214 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+
+import java.util.Arrays;
+
+// Hierarchical A* (HPA*): first searches the small abstract graph kept by
+// Hierarchy to find which clusters the path runs through, then runs the usual
+// cell-level A* restricted to that corridor of clusters. On large maps this
+// keeps the cell-level search from wandering into parts of the map the path
+// never goes near.
+public final class HPAStar extends PathFinder
+{
+	// Cell states (cells not yet seen by this search aren't visited in the Workspace)
+	private static final byte OPEN		= 1;		// On the open list
+	private static final byte CLOSED	= 2;		// Already expanded
+
+	private int start = -1;							// The start cell index
+	private int goal = -1;							// The goal cell index
+
+	private Hierarchy hierarchy = null;				// The abstract graph
+	private boolean[] corridor = null;				// The clusters the cell-level search may enter
+
+	private Workspace workspace = null;				// Our search arrays, reused between searches
+	private IntHeap openList = null;				// Stores cell indexes we have to check out
+
+    // Constructor
+    public HPAStar(Entity entity) {
+    	super(entity);
+    }
+
+    // Re-calculates the path with new start and goal cells
+    public void newPath(Cell start, Cell goal)
+    {
+    	// Initialize arrays
+    	initialize();
+
+    	// Set our new starting point and goal point
+    	this.start = Grid.indexOf(start.getR(), start.getC());
+    	this.goal = Grid.indexOf(goal.getR(), goal.getC());
+
+    	// Don't bother searching if the goal can't be reached
+    	if (rejectUnreachable(this.start, this.goal))
+    	{
+    		cleanUp();
+    		return;
+    	}
+
+    	// The corridor is found on the first call to findPath()
+    	corridor = null;
+    }
+
+    // Calculating the best path based on the start and goal cells given to newPath()
+    public void findPath()
+    {
+    	// Make sure we have starting and ending points and that we don't already have a path
+        if (!needPath || start < 0 || goal < 0) return;
+
+        // Search the abstract graph first
+        if (corridor == null)
+        {
+        	hierarchy = Hierarchy.get();
+        	corridor = hierarchy.corridor(start, goal);
+
+        	// Entrances only link cells straight across a border, so a path that can only
+        	// cross diagonally isn't in the abstract graph; search the whole grid instead
+        	if (corridor == null)
+        	{
+        		corridor = new boolean[hierarchy.getClusterCount()];
+        		Arrays.fill(corridor, true);
+        	}
+
+        	// Add the start cell to the openList
+        	workspace.visit(start);
+        	workspace.g[start] = 0;
+        	workspace.f[start] = estimate(start, goal);
+        	workspace.parent[start] = -1;
+        	workspace.state[start] = OPEN;
+        	openList.push(start);
+        }
+
+        int steps = 0;						// Used to count the number of steps taken per method call
+        int mask, d;						// The playable cells around current, and the direction of one
+        int current = -1, neighbor;			// The cell we are working on and its neighbor
+        int movementCost;					// The cost of moving through current to neighbor
+
+        int[] g = workspace.g;
+        int[] f = workspace.f;
+        int[] parent = workspace.parent;
+        byte[] state = workspace.state;
+
+        // Loop through all possible cells in the corridor and find the best path to the goal
+        while (openList.size() > 0)
+        {
+        	// Set our current cell to the one with the lowest totalCost
+        	current = openList.pop();
+        	state[current] = CLOSED;
+
+        	// If we have found the goal, we no longer need a path
+        	if (current == goal) foundGoal();
+
+        	// Otherwise, continue to search for next best move
+        	else
+        	{
+        		// Go through the playable cells around us (one bit each)
+        		for (mask = Grid.getNeighborMask(current); mask != 0; mask &= (mask - 1))
+        		{
+        			d = Integer.numberOfTrailingZeros(mask);
+        			neighbor = current + Grid.getNeighborOffset(d);
+
+        			// Skip anything outside the corridor
+        			if (!corridor[hierarchy.clusterOf(neighbor)]) continue;
+
+        			movementCost = g[current] + (Grid.isDiagonal(d) ? DIAGONAL : STRAIGHT);
+
+        			// First time we have seen this cell
+        			if (!workspace.isVisited(neighbor))
+        			{
+        				workspace.visit(neighbor);
+        				expanded++;
+        			}
+
+        			// Already seen, only update it if this move is better
+        			else if (movementCost >= g[neighbor]) continue;
+
+        			// Store the new costs and parent
+        			f[neighbor] = movementCost + estimate(neighbor, goal);
+        			g[neighbor] = movementCost;
+        			parent[neighbor] = current;
+
+        			// Lower it in place if it's open, otherwise (re)open it
+        			if (state[neighbor] == OPEN) openList.decreaseKey(neighbor);
+        			else
+        			{
+        				state[neighbor] = OPEN;
+        				openList.push(neighbor);
+        			}
+        		}
+
+        		// Increase steps taken on this loop
+        		steps++;
+        	}
+
+            // If we are finished or have reached our limit for this loop, build best path to this point and exit
+            if (!needPath || reachedLimit(steps))
+            {
+            	path = buildPath(current, workspace);
+            	break;
+            }
+        }
+
+        // Entity is unable to move to goal (path blocked), there is nothing left to search
+        if (needPath && openList.size() == 0)
+        {
+        	noPath();
+        	needPath = false;
+        	cleanUp();
+        	return;
+        }
+
+        // Path is complete
+        if (!needPath)
+        {
+        	// DEBUG - write final path to file
+        	writePath(Grid.getCell(start), Grid.getCell(goal));
+
+        	// If we are done, clean up
+        	cleanUp();
+        }
+    }
+
+    // Hand our workspace back if we are dropped mid-search
+    public void dispose() {
+    	cleanUp();
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Perform clean-up operations when the final path is built
+    private void cleanUp()
+    {
+    	// Hand our workspace back to the pool
+    	Workspace.release(workspace);
+
+    	workspace = null;
+    	openList = null;
+    	corridor = null;
+
+    	// Forget the start and goal so findPath() does nothing until newPath()
+    	start = goal = -1;
+    }
+
+    // Initialize pathFinder arrays
+    private void initialize()
+    {
+	    // Reuse our workspace if we still have one, otherwise grab one from the pool
+    	if ((workspace == null) || (workspace.size() != Grid.getSize())) workspace = Workspace.acquire();
+    	else workspace.reset();
+
+    	openList = workspace.intHeap;
+    	path = Path.EMPTY;
+
+    	// Initialize variables
+    	expanded = 0;
+    	needPath = true;
+    	isFinished = false;
+    }
+}
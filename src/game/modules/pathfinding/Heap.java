@@ -2,146 +2,188 @@ package game.modules.pathfinding;
 
 import java.util.ArrayList;
 
-// The Heap class
+// The Heap class: a binary min-heap of Nodes ordered by totalCost.
+// Every Node remembers its own slot in the heap, so membership tests are O(1)
+// and removing or re-sorting a Node is O(log n) instead of a linear search.
 public final class Heap
 {
     ArrayList<Node> heapList;
-    
+
     // Constructor
     public Heap() {
         heapList = new ArrayList<Node>();
     }
-    
+
+    // Return the slot Node is stored in (or -1 if it isn't in this heap)
     public int indexOf(Node node) {
-        return heapList.indexOf(node);
+        return (contains(node) ? node.getIndex() : -1);
     }
-    
-    // Grab the last element 
+
+    // Grab the last element
     public int lastElement() {
         return heapList.size() - 1;
     }
-    
+
     // The current size of the list
     public int size() {
         return heapList.size();
     }
-    
+
     // Grab the Node as (int) pos
     public Node get(int pos) {
         return heapList.get(pos);
     }
-    
-    // See if Node is in the list
-    public boolean contains(Node node) {
-        return heapList.contains(node);
+
+    // See if Node is in the list (the Node's slot must point back to it)
+    public boolean contains(Node node)
+    {
+        int pos = node.getIndex();
+
+        return ((pos >= 0) && (pos < heapList.size()) && (heapList.get(pos) == node));
     }
-    
+
     // Add an item to the end of the list
-    public void add(Node node) {
+    public void add(Node node)
+    {
+        node.setIndex(heapList.size());
         heapList.add(node);
     }
-    
+
     // Add an item to pos in list
-    public void add(int pos, Node node) {
+    public void add(int pos, Node node)
+    {
         heapList.add(pos, node);
+
+        // Every Node from pos onwards has moved up one slot
+        for (int n = pos; n < heapList.size(); n++) heapList.get(n).setIndex(n);
+    }
+
+    // Remove all items from the list
+    public void clear()
+    {
+        for (Node node : heapList) node.setIndex(-1);
+        heapList.clear();
     }
-    
+
     // Remove an item from the list
-    public void remove(Node node) {
-        this.remove(heapList.indexOf(node));
+    public void remove(Node node)
+    {
+        if (contains(node)) this.remove(node.getIndex());
     }
-    
-    // Remove the top item from the list
+
+    // Remove the item at pos from the list
     public void remove(int pos)
     {
-        Node node;
-        int child, parent, newParent = pos;
-        
-        // Start by moving the last value in the list to the position removed
-        // then decrease the number of Nodes in our list.
-        heapList.set(pos, heapList.get(lastElement()));
-        heapList.remove(lastElement());
-        
-        // Resort the list by comparing the new parent Node with it's child Nodes            
-        while (true)
-        {
-            // Set the parent as the current lowest totalCost Node
-            parent = newParent;
-            
-            // Check to see if the item has child Nodes
-            if ((child = (2 * parent)) <= lastElement())
-            {                
-                // See if the first child Node has a lower totalCost than it's parent
-                if (heapList.get(child).totalCost() <= heapList.get(parent).totalCost()) newParent = child;
-                
-                // Check for another child Node
-                if ((child = (2 * parent + 1)) <= lastElement())
-                {                    
-                    // See if the second child Node has a lower totalCost than it's parent
-                    if (heapList.get(newParent).totalCost() >= heapList.get(child).totalCost()) newParent = child;
-                }
-            }
-            
-            // If the parent Node has a child Node with a lower totalCost, swap them
-            if (parent != newParent)
-            {
-                node = heapList.get(parent);
-                heapList.set(parent, heapList.get(newParent));
-                heapList.set(newParent, node);
-            }
-            
-            // The parent Node has a lower totalCost than all it's children
-            else break;
-        }
+        Node node = heapList.get(pos);
+        Node last = heapList.remove(lastElement());
+
+        // The removed Node no longer has a slot
+        node.setIndex(-1);
+
+        // If we removed the last element there is nothing left to re-sort
+        if (pos > lastElement()) return;
+
+        // Move the last value in the list to the position removed
+        set(pos, last);
+
+        // The moved Node may belong either above or below its new slot
+        if (!siftUp(pos)) siftDown(pos);
     }
-    
+
     // Add an item to the list in it's correct, sorted location
     public void push(Node node)
     {
-    	int n;
-        Node temp;
-        
         // Add our new Node to the list
         add(node);
-        
-        // Store a reference to the last element on the list
-        n = lastElement();
-        
-        // Keep sorting until the new Node reaches the top of the list or we exit the loop
-        while (n > 1)
-        {        	
-        	// If the child Node has a lower totalCost than it's parent, swap them
-            if (heapList.get(n).totalCost() <= heapList.get(n / 2).totalCost())
-            {            	
-                temp = heapList.get(n / 2);
-                heapList.set((n / 2), heapList.get(n));
-                heapList.set(n, temp);
-                
-                // Cut n in half and try again
-                n = (n / 2);
-            }
-            
-            // Parent node has a lower totalCost than child, exit loop
-            else break;
-        }
+
+        // Move it up until its parent has a lower totalCost
+        siftUp(lastElement());
+    }
+
+    // A Node already in the list has had its totalCost lowered, move it up to its new location
+    public void decreaseKey(Node node)
+    {
+        // Not on this list, push it instead
+        if (!contains(node)) push(node);
+
+        // Otherwise, re-sort from its current slot
+        else siftUp(node.getIndex());
     }
-    
+
     // Return the item at the top of the list and remove it
     public Node pop()
     {
+        // Nothing left on the list
+        if (heapList.isEmpty()) return null;
+
         Node node = heapList.get(0);
-        
-        // Make sure Node exists
-        if (node != null)
-        {        	
-        	// If there is more than one item left, resort our list
-        	if (lastElement() > 0) remove(0);
-            
-            // If theres only one item in our list, just remove it (no need to resort)
-            else heapList.remove(0);
-        }
-        
-    	// Return the node we removed (or null if node doesn't exist)
+
+        // Remove the top item and re-sort the list
+        remove(0);
+
+    	// Return the node we removed
         return node;
     }
+
+    /**
+     *
+     * Private Functions
+     *
+     **/
+
+    // Store a Node at pos and record the slot on the Node
+    private void set(int pos, Node node)
+    {
+        heapList.set(pos, node);
+        node.setIndex(pos);
+    }
+
+    // Move the Node at pos up towards the top of the list, returns true if it moved
+    private boolean siftUp(int pos)
+    {
+        int parent, start = pos;
+        Node node = heapList.get(pos);
+
+        // Keep swapping with the parent while the parent has a higher totalCost
+        while (pos > 0)
+        {
+            parent = ((pos - 1) / 2);
+
+            // Parent Node has a lower totalCost than child, stop here
+            if (heapList.get(parent).totalCost() <= node.totalCost()) break;
+
+            // Move the parent down into our slot
+            set(pos, heapList.get(parent));
+            pos = parent;
+        }
+
+        // Drop the Node into its final slot
+        set(pos, node);
+
+        return (pos != start);
+    }
+
+    // Move the Node at pos down towards the bottom of the list
+    private void siftDown(int pos)
+    {
+        int child;
+        Node node = heapList.get(pos);
+
+        // Keep swapping with the lowest child while that child has a lower totalCost
+        while ((child = (2 * pos + 1)) <= lastElement())
+        {
+            // Use the second child if it has a lower totalCost than the first
+            if ((child < lastElement()) && (heapList.get(child + 1).totalCost() < heapList.get(child).totalCost())) child++;
+
+            // The parent Node has a lower totalCost than all it's children
+            if (node.totalCost() <= heapList.get(child).totalCost()) break;
+
+            // Move the child up into our slot
+            set(pos, heapList.get(child));
+            pos = child;
+        }
+
+        // Drop the Node into its final slot
+        set(pos, node);
+    }
 }
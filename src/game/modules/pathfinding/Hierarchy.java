@@ -0,0 +1,494 @@
+package game.modules.pathfinding;
+
+import game.map.Cell;
+import game.map.Grid;
+import game.map.GridListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// The abstract graph used by hierarchical pathfinding (HPA*). The Grid is split
+// into square clusters; wherever two neighboring clusters share a run of
+// playable cells along their border we place an entrance (a pair of abstract
+// nodes, one each side) and every cluster stores the walking cost between all
+// of its own entrances. Searching this graph first tells us which clusters the
+// path runs through, so the cell-level search only has to look inside those.
+//
+// When a cell changes we only mark its cluster (and any border it lies on)
+// as dirty; they are rebuilt the next time the hierarchy is used.
+public final class Hierarchy implements GridListener
+{
+	// The default width and height of a cluster (in cells)
+	public static final int CLUSTER_SIZE = 10;
+
+	// Entrances longer than this get a transition at each end instead of one in the middle
+	private static final int MAX_ENTRANCE_WIDTH = 6;
+
+	// The single hierarchy for the current Grid
+	private static Hierarchy hierarchy = null;
+
+	// An abstract node: a cell on a cluster border that leads into the neighboring cluster
+	static final class Entrance
+	{
+		int id;										// This entrance's position in the entrance list
+		final int cell;								// The cell index
+		final int cluster;							// The cluster the cell is in
+		final int border;							// The border this entrance was built for
+		Entrance partner = null;					// The entrance on the other side of the border
+		final ArrayList<Edge> edges = new ArrayList<Edge>();	// Costs to the other entrances in our cluster
+
+		Entrance(int cell, int cluster, int border)
+		{
+			this.cell = cell;
+			this.cluster = cluster;
+			this.border = border;
+		}
+	}
+
+	// The cost of walking between two entrances of the same cluster
+	static final class Edge
+	{
+		final Entrance to;
+		final int cost;
+
+		Edge(Entrance to, int cost)
+		{
+			this.to = to;
+			this.cost = cost;
+		}
+	}
+
+	private int clusterSize = CLUSTER_SIZE;			// The width and height of a cluster (in cells)
+	private int clusterRows = 0;					// The number of clusters down the grid
+	private int clusterColumns = 0;					// The number of clusters across the grid
+
+	private Object builtFor = null;					// The Grid cell list we were built for
+
+	private ArrayList<Entrance> entrances = new ArrayList<Entrance>();						// Every entrance
+	private ArrayList<ArrayList<Entrance>> clusters = new ArrayList<ArrayList<Entrance>>();	// The entrances of each cluster
+
+	private boolean[] dirtyClusters = null;			// Clusters whose edges need rebuilding
+	private boolean[] dirtyBorders = null;			// Borders whose entrances need rebuilding
+	private boolean dirty = false;					// Whether or not anything needs rebuilding
+
+    // Constructor
+    private Hierarchy() {}
+
+    // Return the hierarchy for the current Grid, bringing it up to date first
+    public static synchronized Hierarchy get()
+    {
+    	if (hierarchy == null)
+    	{
+    		hierarchy = new Hierarchy();
+    		Grid.addListener(hierarchy);
+    	}
+
+    	hierarchy.update();
+
+    	return hierarchy;
+    }
+
+    // Return the width and height of a cluster (in cells)
+    public int getClusterSize() {
+    	return clusterSize;
+    }
+
+    // Change the width and height of a cluster, rebuilding everything
+    public synchronized void setClusterSize(int size)
+    {
+    	clusterSize = Math.max(2, size);
+    	builtFor = null;
+    	update();
+    }
+
+    // Return the number of clusters
+    public int getClusterCount() {
+    	return clusterRows * clusterColumns;
+    }
+
+    // Return the cluster cell (r, c) is in
+    public int clusterOf(int r, int c) {
+    	return (((r - 1) / clusterSize) * clusterColumns) + ((c - 1) / clusterSize);
+    }
+
+    // Return the cluster a cell index is in
+    public int clusterOf(int index) {
+    	return clusterOf(Grid.rowFromIndex(index), Grid.columnFromIndex(index));
+    }
+
+    // Return the number of entrances in the abstract graph
+    public int getEntranceCount() {
+    	return entrances.size();
+    }
+
+    // A cell changed: mark its cluster, and any border it lies on, for rebuilding
+    public synchronized void cellChanged(Cell cell)
+    {
+    	// Nothing built yet, the whole hierarchy gets built on first use
+    	if (builtFor == null) return;
+
+    	int r = cell.getR();
+    	int c = cell.getC();
+    	int cluster = clusterOf(r, c);
+    	int cr = cluster / clusterColumns;
+    	int cc = cluster % clusterColumns;
+
+    	dirtyClusters[cluster] = true;
+    	dirty = true;
+
+    	// On the bottom or top edge of the cluster
+    	if ((r == lastRow(cr)) && (cr < clusterRows - 1)) dirtyBorders[2 * cluster] = true;
+    	if ((r == firstRow(cr)) && (cr > 0)) dirtyBorders[2 * (cluster - clusterColumns)] = true;
+
+    	// On the right or left edge of the cluster
+    	if ((c == lastColumn(cc)) && (cc < clusterColumns - 1)) dirtyBorders[2 * cluster + 1] = true;
+    	if ((c == firstColumn(cc)) && (cc > 0)) dirtyBorders[2 * (cluster - 1) + 1] = true;
+    }
+
+    // Search the abstract graph from cell index start to cell index goal and return
+    // which clusters the path passes through (or null if the goal can't be reached)
+    public boolean[] corridor(int start, int goal)
+    {
+    	int startCluster = clusterOf(start);
+    	int goalCluster = clusterOf(goal);
+
+    	// The abstract graph is every entrance plus the start (n) and goal (n + 1)
+    	int n = entrances.size();
+    	int[] g = new int[n + 2];
+    	int[] f = new int[n + 2];
+    	int[] parent = new int[n + 2];
+    	int[] goalCost = new int[n + 2];
+    	boolean[] closed = new boolean[n + 2];
+    	IntHeap openList = new IntHeap(n + 2, f);
+
+    	Arrays.fill(g, Integer.MAX_VALUE);
+    	Arrays.fill(goalCost, -1);
+
+    	Workspace workspace = Workspace.acquire();
+
+    	// Walking costs from the goal to the entrances of its cluster
+    	distances(workspace, goal, goalCluster);
+    	for (Entrance e : clusters.get(goalCluster))
+    		if (workspace.isVisited(e.cell)) goalCost[e.id] = workspace.g[e.cell];
+
+    	// Start and goal share a cluster and can reach each other inside it
+    	if (workspace.isVisited(start)) goalCost[n] = workspace.g[start];
+
+    	// Walking costs from the start to the entrances of its cluster
+    	distances(workspace, start, startCluster);
+
+    	g[n] = 0;
+    	f[n] = PathFinder.estimate(start, goal);
+    	parent[n] = -1;
+    	openList.push(n);
+
+    	// A* over the abstract graph
+    	while (openList.size() > 0)
+    	{
+    		int current = openList.pop();
+    		closed[current] = true;
+
+    		// Found the goal
+    		if (current == n + 1) break;
+
+    		// Leaving the start: only the entrances of its own cluster (and maybe the goal)
+    		if (current == n)
+    		{
+    			for (Entrance e : clusters.get(startCluster))
+    				if (workspace.isVisited(e.cell)) relax(current, e.id, workspace.g[e.cell], g, f, parent, closed, openList, goal);
+    		}
+
+    		// Leaving an entrance: through the border, across its cluster, or to the goal
+    		else
+    		{
+    			Entrance entrance = entrances.get(current);
+
+    			if (entrance.partner != null) relax(current, entrance.partner.id, PathFinder.STRAIGHT, g, f, parent, closed, openList, goal);
+    			for (Edge edge : entrance.edges) relax(current, edge.to.id, edge.cost, g, f, parent, closed, openList, goal);
+    		}
+
+    		// Step onto the goal from here
+    		if (goalCost[current] >= 0) relax(current, n + 1, goalCost[current], g, f, parent, closed, openList, goal);
+    	}
+
+    	Workspace.release(workspace);
+
+    	// Goal can't be reached
+    	if (!closed[n + 1]) return null;
+
+    	// Mark the clusters along the abstract path
+    	boolean[] corridor = new boolean[getClusterCount()];
+    	corridor[startCluster] = true;
+    	corridor[goalCluster] = true;
+
+    	for (int id = parent[n + 1]; id >= 0 && id < n; id = parent[id])
+    		corridor[entrances.get(id).cluster] = true;
+
+    	return corridor;
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Relax an abstract edge during corridor()
+    private void relax(int from, int to, int cost, int[] g, int[] f, int[] parent, boolean[] closed, IntHeap openList, int goal)
+    {
+    	int n = entrances.size();
+    	int movementCost = g[from] + cost;
+
+    	if (closed[to] || (movementCost >= g[to])) return;
+
+    	g[to] = movementCost;
+    	f[to] = movementCost + ((to >= n) ? 0 : PathFinder.estimate(entrances.get(to).cell, goal));
+    	parent[to] = from;
+    	openList.decreaseKey(to);
+    }
+
+    // Bring the hierarchy up to date with the Grid
+    private synchronized void update()
+    {
+    	// A new map was loaded (or the cluster size changed), build everything
+    	if (builtFor != Grid.getCells())
+    	{
+    		build();
+    		return;
+    	}
+
+    	if (!dirty) return;
+
+    	// Rebuild the entrances on dirty borders first, they change both clusters' edges
+    	for (int border = 0; border < dirtyBorders.length; border++)
+    	{
+    		if (dirtyBorders[border])
+    		{
+    			buildBorder(border);
+    			dirtyBorders[border] = false;
+    		}
+    	}
+
+    	// Then rebuild the edges inside every dirty cluster
+    	Workspace workspace = Workspace.acquire();
+
+    	for (int cluster = 0; cluster < dirtyClusters.length; cluster++)
+    	{
+    		if (dirtyClusters[cluster])
+    		{
+    			buildEdges(workspace, cluster);
+    			dirtyClusters[cluster] = false;
+    		}
+    	}
+
+    	Workspace.release(workspace);
+
+    	dirty = false;
+    }
+
+    // Build the whole hierarchy from scratch
+    private void build()
+    {
+    	clusterRows = ((Grid.getRows() + clusterSize - 1) / clusterSize);
+    	clusterColumns = ((Grid.getColumns() + clusterSize - 1) / clusterSize);
+
+    	entrances.clear();
+    	clusters.clear();
+    	for (int cluster = 0; cluster < getClusterCount(); cluster++) clusters.add(new ArrayList<Entrance>());
+
+    	dirtyClusters = new boolean[getClusterCount()];
+    	dirtyBorders = new boolean[2 * getClusterCount()];
+
+    	// Entrances along every border
+    	for (int border = 0; border < dirtyBorders.length; border++) buildBorder(border);
+
+    	// Edges inside every cluster
+    	Workspace workspace = Workspace.acquire();
+    	for (int cluster = 0; cluster < getClusterCount(); cluster++) buildEdges(workspace, cluster);
+    	Workspace.release(workspace);
+
+    	// Everything is up to date
+    	Arrays.fill(dirtyClusters, false);
+    	dirty = false;
+
+    	builtFor = Grid.getCells();
+    }
+
+    // (Re)build the entrances along a border. Border 2n is between cluster n and the
+    // cluster below it, border 2n + 1 is between cluster n and the cluster to its right.
+    private void buildBorder(int border)
+    {
+    	int a = border / 2;
+    	int cr = a / clusterColumns;
+    	int cc = a % clusterColumns;
+    	boolean below = ((border % 2) == 0);
+
+    	// The last cluster row/column has no border on that side
+    	if (below ? (cr >= clusterRows - 1) : (cc >= clusterColumns - 1)) return;
+
+    	int b = (below ? a + clusterColumns : a + 1);
+
+    	// Throw away the old entrances on this border
+    	removeEntrances(a, border);
+    	removeEntrances(b, border);
+
+    	// The line of cells on each side, and the run along the border
+    	int from = (below ? firstColumn(cc) : firstRow(cr));
+    	int to = (below ? lastColumn(cc) : lastRow(cr));
+    	int run = -1;
+
+    	for (int i = from; i <= to + 1; i++)
+    	{
+    		// Both cells either side of the border must be playable
+    		boolean open = (i <= to) && (below ?
+    				(Grid.isPlayable(lastRow(cr), i) && Grid.isPlayable(lastRow(cr) + 1, i)) :
+    				(Grid.isPlayable(i, lastColumn(cc)) && Grid.isPlayable(i, lastColumn(cc) + 1)));
+
+    		// Start of a run
+    		if (open && (run < 0)) run = i;
+
+    		// End of a run: place one transition in the middle, or one at each end of a wide run
+    		else if (!open && (run >= 0))
+    		{
+    			if ((i - run) < MAX_ENTRANCE_WIDTH) addTransition(a, b, border, below, cr, cc, (run + i - 1) / 2);
+    			else
+    			{
+    				addTransition(a, b, border, below, cr, cc, run);
+    				addTransition(a, b, border, below, cr, cc, i - 1);
+    			}
+
+    			run = -1;
+    		}
+    	}
+
+    	// Both clusters' edges have to be rebuilt now
+    	dirtyClusters[a] = dirtyClusters[b] = true;
+    	dirty = true;
+    }
+
+    // Add a pair of linked entrances at position i along a border
+    private void addTransition(int a, int b, int border, boolean below, int cr, int cc, int i)
+    {
+    	int cellA = (below ? Grid.indexOf(lastRow(cr), i) : Grid.indexOf(i, lastColumn(cc)));
+    	int cellB = (below ? Grid.indexOf(lastRow(cr) + 1, i) : Grid.indexOf(i, lastColumn(cc) + 1));
+
+    	Entrance first = addEntrance(new Entrance(cellA, a, border));
+    	Entrance second = addEntrance(new Entrance(cellB, b, border));
+
+    	first.partner = second;
+    	second.partner = first;
+    }
+
+    // Add an entrance to the entrance list and its cluster
+    private Entrance addEntrance(Entrance entrance)
+    {
+    	entrance.id = entrances.size();
+    	entrances.add(entrance);
+    	clusters.get(entrance.cluster).add(entrance);
+
+    	return entrance;
+    }
+
+    // Remove the entrances a cluster has on a border
+    private void removeEntrances(int cluster, int border)
+    {
+    	ArrayList<Entrance> list = clusters.get(cluster);
+
+    	for (int i = list.size() - 1; i >= 0; i--)
+    	{
+    		Entrance entrance = list.get(i);
+    		if (entrance.border != border) continue;
+
+    		list.remove(i);
+
+    		// Swap the last entrance into this one's slot so ids stay dense
+    		Entrance last = entrances.remove(entrances.size() - 1);
+    		if (last != entrance)
+    		{
+    			last.id = entrance.id;
+    			entrances.set(last.id, last);
+    		}
+    	}
+    }
+
+    // (Re)build the walking costs between all the entrances of a cluster
+    private void buildEdges(Workspace workspace, int cluster)
+    {
+    	ArrayList<Entrance> list = clusters.get(cluster);
+
+    	for (Entrance from : list)
+    	{
+    		from.edges.clear();
+
+    		// Walk out from this entrance and record the cost to every other one we reach
+    		distances(workspace, from.cell, cluster);
+
+    		for (Entrance to : list)
+    			if ((to != from) && workspace.isVisited(to.cell)) from.edges.add(new Edge(to, workspace.g[to.cell]));
+    	}
+    }
+
+    // Dijkstra from cell index from, staying inside cluster. Afterwards every reachable
+    // cell of the cluster is visited in workspace with its cost in workspace.g
+    private void distances(Workspace workspace, int from, int cluster)
+    {
+    	int cr = cluster / clusterColumns;
+    	int cc = cluster % clusterColumns;
+    	int r0 = firstRow(cr), r1 = lastRow(cr);
+    	int c0 = firstColumn(cc), c1 = lastColumn(cc);
+
+    	int[] g = workspace.g;
+    	int[] f = workspace.f;
+    	IntHeap openList = workspace.intHeap;
+
+    	workspace.reset();
+
+    	// Nothing to walk from
+    	if (!Grid.getCell(from).isPlayable()) return;
+
+    	workspace.visit(from);
+    	g[from] = f[from] = 0;
+    	openList.push(from);
+
+    	while (openList.size() > 0)
+    	{
+    		int current = openList.pop();
+    		int r = Grid.rowFromIndex(current);
+    		int c = Grid.columnFromIndex(current);
+
+    		for (int nr = Math.max(r0, r - 1); nr <= Math.min(r1, r + 1); nr++)
+    		{
+    			for (int nc = Math.max(c0, c - 1); nc <= Math.min(c1, c + 1); nc++)
+    			{
+    				if (((nr == r) && (nc == c)) || !Grid.isPlayable(nr, nc)) continue;
+
+    				int neighbor = Grid.indexOf(nr, nc);
+    				int movementCost = g[current] + (((nr != r) && (nc != c)) ? PathFinder.DIAGONAL : PathFinder.STRAIGHT);
+
+    				if (workspace.isVisited(neighbor) && (movementCost >= g[neighbor])) continue;
+
+    				workspace.visit(neighbor);
+    				g[neighbor] = f[neighbor] = movementCost;
+    				openList.decreaseKey(neighbor);
+    			}
+    		}
+    	}
+    }
+
+    // The first and last grid rows/columns of a cluster row/column
+    private int firstRow(int cr) {
+    	return (cr * clusterSize) + 1;
+    }
+
+    private int lastRow(int cr) {
+    	return Math.min(Grid.getRows(), (cr + 1) * clusterSize);
+    }
+
+    private int firstColumn(int cc) {
+    	return (cc * clusterSize) + 1;
+    }
+
+    private int lastColumn(int cc) {
+    	return Math.min(Grid.getColumns(), (cc + 1) * clusterSize);
+    }
+}
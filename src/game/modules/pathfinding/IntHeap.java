@@ -0,0 +1,180 @@
+package game.modules.pathfinding;
+
+// A binary min-heap of flat cell indexes ordered by a shared cost array
+// (either int[] costs, or long[] keys for searches with two-part keys).
+// The slot of every index is kept in its own array, so membership tests are
+// O(1) and decrease-key is O(log n). Nothing is allocated after construction.
+public final class IntHeap
+{
+	private int[] heap;				// The cell indexes, heap ordered
+	private int[] slot;				// The slot each cell index is stored in
+	private int[] keys;				// The costs the heap is ordered by (indexed by cell)
+	private long[] longKeys;		// Or the long keys the heap is ordered by (indexed by cell)
+	private int size = 0;			// The number of indexes on the heap
+
+    // Constructor, capacity is the number of cells in the grid
+    public IntHeap(int capacity, int[] keys)
+    {
+    	this.heap = new int[capacity];
+    	this.slot = new int[capacity];
+    	this.keys = keys;
+    }
+
+    // Constructor for a heap ordered by long keys
+    public IntHeap(int capacity, long[] keys)
+    {
+    	this.heap = new int[capacity];
+    	this.slot = new int[capacity];
+    	this.longKeys = keys;
+    }
+
+    // The current size of the heap
+    public int size() {
+        return size;
+    }
+
+    // Remove all items from the heap (slots are validated on use, so no need to reset them)
+    public void clear() {
+    	size = 0;
+    }
+
+    // See if index is on the heap (its slot must point back to it)
+    public boolean contains(int index)
+    {
+    	int pos = slot[index];
+
+    	return ((pos < size) && (heap[pos] == index));
+    }
+
+    // Return the index at the top of the heap without removing it
+    public int peek() {
+    	return heap[0];
+    }
+
+    // Add an index to the heap in its correct, sorted location
+    public void push(int index)
+    {
+    	heap[size] = index;
+    	slot[index] = size;
+
+    	siftUp(size++);
+    }
+
+    // An index already on the heap has had its key lowered, move it up to its new location
+    public void decreaseKey(int index)
+    {
+    	// Not on the heap, push it instead
+    	if (!contains(index)) push(index);
+
+    	// Otherwise, re-sort from its current slot
+    	else siftUp(slot[index]);
+    }
+
+    // Return the index at the top of the heap and remove it
+    public int pop()
+    {
+    	int index = heap[0];
+
+    	// Move the last index to the top and re-sort
+    	if (--size > 0)
+    	{
+    		set(0, heap[size]);
+    		siftDown(0);
+    	}
+
+    	return index;
+    }
+
+    // An index already on the heap has had its key changed either way, re-sort it
+    public void update(int index)
+    {
+    	// Not on the heap, push it instead
+    	if (!contains(index)) push(index);
+
+    	// Otherwise, move it whichever way it needs to go
+    	else if (!siftUp(slot[index])) siftDown(slot[index]);
+    }
+
+    // Remove an index from the heap
+    public void remove(int index)
+    {
+    	if (!contains(index)) return;
+
+    	int pos = slot[index];
+
+    	// If we removed the last element there is nothing left to re-sort
+    	if (pos == --size) return;
+
+    	// Move the last value in the heap to the position removed
+    	set(pos, heap[size]);
+
+        // The moved index may belong either above or below its new slot
+    	if (!siftUp(pos)) siftDown(pos);
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Whether or not index a has a lower key than index b
+    private boolean lower(int a, int b)
+    {
+    	if (longKeys != null) return (longKeys[a] < longKeys[b]);
+
+    	return (keys[a] < keys[b]);
+    }
+
+    // Store an index at pos and record its slot
+    private void set(int pos, int index)
+    {
+    	heap[pos] = index;
+    	slot[index] = pos;
+    }
+
+    // Move the index at pos up towards the top, returns true if it moved
+    private boolean siftUp(int pos)
+    {
+    	int parent, start = pos;
+    	int index = heap[pos];
+
+    	while (pos > 0)
+    	{
+    		parent = ((pos - 1) / 2);
+
+    		// Parent has a lower key than child, stop here
+    		if (!lower(index, heap[parent])) break;
+
+    		// Move the parent down into our slot
+    		set(pos, heap[parent]);
+    		pos = parent;
+    	}
+
+    	set(pos, index);
+
+    	return (pos != start);
+    }
+
+    // Move the index at pos down towards the bottom
+    private void siftDown(int pos)
+    {
+    	int child;
+    	int index = heap[pos];
+
+    	while ((child = (2 * pos + 1)) < size)
+    	{
+    		// Use the second child if it has a lower key than the first
+    		if ((child + 1 < size) && lower(heap[child + 1], heap[child])) child++;
+
+    		// The parent has a lower key than all its children
+    		if (!lower(heap[child], index)) break;
+
+    		// Move the child up into our slot
+    		set(pos, heap[child]);
+    		pos = child;
+    	}
+
+    	set(pos, index);
+    }
+}
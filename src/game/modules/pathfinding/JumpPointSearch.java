@@ -0,0 +1,338 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+
+// Jump Point Search: A* over uniform-cost 8-connected grids that only opens
+// "jump points" (cells with forced neighbors) instead of every cell, skipping
+// the symmetric paths plain A* has to expand.
+//
+// Diagonal moves are only allowed when both cells beside the move are playable,
+// since MovableEntity.canMove would fail the entity's bounding box otherwise.
+public final class JumpPointSearch extends PathFinder
+{
+	// Cell states (cells not yet seen by this search aren't visited in the Workspace)
+	private static final byte OPEN		= 1;		// On the open list
+	private static final byte CLOSED	= 2;		// Already expanded
+
+	private int start = -1;							// The start cell index
+	private int goal = -1;							// The goal cell index
+
+	private Workspace workspace = null;				// Our search arrays, reused between searches
+	private IntHeap openList = null;				// Stores jump points we have to check out
+
+	// The directions to check around a cell, as (dr, dc) pairs
+	private int[] directions = new int[16];
+
+    // Constructor
+    public JumpPointSearch(Entity entity) {
+    	super(entity);
+    }
+
+    // Re-calculates the path with new start and goal cells
+    public void newPath(Cell start, Cell goal)
+    {
+    	// Initialize arrays
+    	initialize();
+
+    	// Set our new starting point and goal point
+    	this.start = Grid.indexOf(start.getR(), start.getC());
+    	this.goal = Grid.indexOf(goal.getR(), goal.getC());
+
+    	// Don't bother searching if the goal can't be reached
+    	if (rejectUnreachable(this.start, this.goal))
+    	{
+    		cleanUp();
+    		return;
+    	}
+
+    	// Add the start cell to the openList
+    	workspace.visit(this.start);
+    	workspace.g[this.start] = 0;
+    	workspace.f[this.start] = estimate(this.start, this.goal);
+    	workspace.parent[this.start] = -1;
+    	workspace.state[this.start] = OPEN;
+    	openList.push(this.start);
+    }
+
+    // Calculating the best path based on the start and goal cells given to newPath()
+    public void findPath()
+    {
+    	// Make sure we have starting and ending points and that we don't already have a path
+        if (!needPath || start < 0 || goal < 0) return;
+
+        int steps = 0;						// Used to count the number of steps taken per method call
+        int current = -1, point;			// The cell we are working on and the jump point found from it
+        int count, movementCost;			// Number of directions to check and the cost of a jump
+
+        int[] g = workspace.g;
+        int[] f = workspace.f;
+        int[] parent = workspace.parent;
+        byte[] state = workspace.state;
+
+        // Loop through all jump points and find the best path to the goal
+        while (openList.size() > 0)
+        {
+        	// Set our current cell to the one with the lowest totalCost
+        	current = openList.pop();
+        	state[current] = CLOSED;
+
+        	// If we have found the goal, we no longer need a path
+        	if (current == goal) foundGoal();
+
+        	// Otherwise, jump in every direction that isn't pruned
+        	else
+        	{
+        		count = directions(current);
+
+        		for (int d = 0; d < count; d++)
+        		{
+        			point = jump(Grid.rowFromIndex(current) + directions[2 * d], Grid.columnFromIndex(current) + directions[2 * d + 1],
+        					directions[2 * d], directions[2 * d + 1]);
+
+        			// Nothing worth stopping at in this direction
+        			if (point < 0) continue;
+
+        			// Jumps are straight or diagonal lines, so the octile distance is exact
+        			movementCost = g[current] + estimate(current, point);
+
+    				// First time we have seen this jump point
+    				if (!workspace.isVisited(point))
+    				{
+    					workspace.visit(point);
+    					expanded++;
+    				}
+
+    				// Already seen, only update it if this jump is better
+    				else if (movementCost >= g[point]) continue;
+
+    				// Store the new costs and parent
+    				f[point] = movementCost + estimate(point, goal);
+    				g[point] = movementCost;
+    				parent[point] = current;
+
+    				// Lower it in place if it's open, otherwise (re)open it
+    				if (state[point] == OPEN) openList.decreaseKey(point);
+    				else
+    				{
+    					state[point] = OPEN;
+    					openList.push(point);
+    				}
+        		}
+
+        		// Increase steps taken on this loop
+        		steps++;
+        	}
+
+            // If we are finished or have reached our limit for this loop, build best path to this point and exit
+            if (!needPath || reachedLimit(steps))
+            {
+            	path = buildPath(current, workspace);
+            	break;
+            }
+        }
+
+        // Entity is unable to move to goal (path blocked), there is nothing left to search
+        if (needPath && openList.size() == 0)
+        {
+        	noPath();
+        	needPath = false;
+        	cleanUp();
+        	return;
+        }
+
+        // Path is complete
+        if (!needPath)
+        {
+        	// DEBUG - write final path to file
+        	writePath(Grid.getCell(start), Grid.getCell(goal));
+
+        	// If we are done, clean up
+        	cleanUp();
+        }
+    }
+
+    // Hand our workspace back if we are dropped mid-search
+    public void dispose() {
+    	cleanUp();
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Whether or not the entity may step diagonally from (r, c) by (dr, dc)
+    private static boolean canCut(int r, int c, int dr, int dc)
+    {
+    	return (Grid.isPlayable(r + dr, c) && Grid.isPlayable(r, c + dc));
+    }
+
+    // Add a direction to check
+    private int addDirection(int count, int dr, int dc)
+    {
+    	directions[2 * count] = dr;
+    	directions[2 * count + 1] = dc;
+
+    	return count + 1;
+    }
+
+    // Fill directions with the moves worth making from cell index, returns how many there are
+    private int directions(int index)
+    {
+    	int count = 0;
+    	int r = Grid.rowFromIndex(index);
+    	int c = Grid.columnFromIndex(index);
+    	int from = workspace.parent[index];
+
+    	// The start cell has no parent, so every move is worth making
+    	if (from < 0)
+    	{
+    		for (int dr = -1; dr <= 1; dr++)
+    		{
+    			for (int dc = -1; dc <= 1; dc++)
+    			{
+    				if ((dr == 0) && (dc == 0)) continue;
+
+    				// Skip blocked cells and diagonals that would clip a corner
+    				if (!Grid.isPlayable(r + dr, c + dc)) continue;
+    				if ((dr != 0) && (dc != 0) && !canCut(r, c, dr, dc)) continue;
+
+    				count = addDirection(count, dr, dc);
+    			}
+    		}
+
+    		return count;
+    	}
+
+    	// The direction we arrived from
+    	int dr = Integer.signum(r - Grid.rowFromIndex(from));
+    	int dc = Integer.signum(c - Grid.columnFromIndex(from));
+
+    	// Moving diagonally: keep going diagonally, or along either of its parts
+    	if ((dr != 0) && (dc != 0))
+    	{
+    		if (Grid.isPlayable(r + dr, c)) count = addDirection(count, dr, 0);
+    		if (Grid.isPlayable(r, c + dc)) count = addDirection(count, 0, dc);
+    		if (canCut(r, c, dr, dc) && Grid.isPlayable(r + dr, c + dc)) count = addDirection(count, dr, dc);
+    	}
+
+    	// Moving straight along a row
+    	else if (dr != 0)
+    	{
+    		boolean next = Grid.isPlayable(r + dr, c);
+    		boolean left = Grid.isPlayable(r, c - 1);
+    		boolean right = Grid.isPlayable(r, c + 1);
+
+    		// Keep going, and turn diagonally around anything beside us
+    		if (next)
+    		{
+    			count = addDirection(count, dr, 0);
+    			if (left && Grid.isPlayable(r + dr, c - 1)) count = addDirection(count, dr, -1);
+    			if (right && Grid.isPlayable(r + dr, c + 1)) count = addDirection(count, dr, 1);
+    		}
+
+    		// Turning to either side is forced when the cell behind it was blocked
+    		if (left) count = addDirection(count, 0, -1);
+    		if (right) count = addDirection(count, 0, 1);
+    	}
+
+    	// Moving straight along a column
+    	else
+    	{
+    		boolean next = Grid.isPlayable(r, c + dc);
+    		boolean up = Grid.isPlayable(r - 1, c);
+    		boolean down = Grid.isPlayable(r + 1, c);
+
+    		// Keep going, and turn diagonally around anything beside us
+    		if (next)
+    		{
+    			count = addDirection(count, 0, dc);
+    			if (up && Grid.isPlayable(r - 1, c + dc)) count = addDirection(count, -1, dc);
+    			if (down && Grid.isPlayable(r + 1, c + dc)) count = addDirection(count, 1, dc);
+    		}
+
+    		// Turning to either side is forced when the cell behind it was blocked
+    		if (up) count = addDirection(count, -1, 0);
+    		if (down) count = addDirection(count, 1, 0);
+    	}
+
+    	return count;
+    }
+
+    // Step from (r, c) in direction (dr, dc) until we find a jump point, returns its
+    // index (or -1 if we hit a wall first)
+    private int jump(int r, int c, int dr, int dc)
+    {
+    	int index;
+
+    	while (true)
+    	{
+    		// Ran into a wall or off the grid
+    		if (!Grid.isPlayable(r, c)) return -1;
+
+    		index = Grid.indexOf(r, c);
+
+    		// The goal is always worth stopping at
+    		if (index == goal) return index;
+
+    		// Moving diagonally: stop if either straight part finds something
+    		if ((dr != 0) && (dc != 0))
+    		{
+    			if ((jump(r + dr, c, dr, 0) >= 0) || (jump(r, c + dc, 0, dc) >= 0)) return index;
+
+    			// We can't keep going without clipping a corner
+    			if (!canCut(r, c, dr, dc)) return -1;
+    		}
+
+    		// Moving along a row: stop if a wall behind us opens up beside us
+    		else if (dr != 0)
+    		{
+    			if ((Grid.isPlayable(r, c - 1) && !Grid.isPlayable(r - dr, c - 1)) ||
+    					(Grid.isPlayable(r, c + 1) && !Grid.isPlayable(r - dr, c + 1))) return index;
+    		}
+
+    		// Moving along a column: stop if a wall behind us opens up beside us
+    		else
+    		{
+    			if ((Grid.isPlayable(r - 1, c) && !Grid.isPlayable(r - 1, c - dc)) ||
+    					(Grid.isPlayable(r + 1, c) && !Grid.isPlayable(r + 1, c - dc))) return index;
+    		}
+
+    		// Take another step
+    		r += dr;
+    		c += dc;
+    	}
+    }
+
+    // Perform clean-up operations when the final path is built
+    private void cleanUp()
+    {
+    	// Hand our workspace back to the pool
+    	Workspace.release(workspace);
+
+    	workspace = null;
+    	openList = null;
+
+    	// Forget the start and goal so findPath() does nothing until newPath()
+    	start = goal = -1;
+    }
+
+    // Initialize pathFinder arrays
+    private void initialize()
+    {
+	    // Reuse our workspace if we still have one, otherwise grab one from the pool
+    	if ((workspace == null) || (workspace.size() != Grid.getSize())) workspace = Workspace.acquire();
+    	else workspace.reset();
+
+    	openList = workspace.intHeap;
+    	path = Path.EMPTY;
+
+    	// Initialize variables
+    	expanded = 0;
+    	needPath = true;
+    	isFinished = false;
+    }
+}
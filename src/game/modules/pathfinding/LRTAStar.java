@@ -0,0 +1,267 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+
+// Learning Real-Time A* (LSS-LRTA*): instead of searching all the way to the
+// goal, each plan looks at most LOOKAHEAD cells ahead of where the entity is,
+// walks to the most promising cell on the edge of what it looked at, and plans
+// again from there. However big the map, no plan ever costs more than that
+// lookahead, so a huge swarm costs a fixed amount per entity per plan.
+//
+// What keeps it from wandering in circles is learning: after each lookahead,
+// every cell it expanded has its heuristic raised to the best it now knows
+// (the cheapest way out through the edge of the lookahead), so dead ends fill
+// up and stop looking attractive. The values go into the goal's shared table
+// (see LearnedHeuristics), so every entity heading for that goal, this round
+// or the next, starts from what the others learned. Paths are a little worse
+// than A*'s until the table has settled on a route.
+public final class LRTAStar extends PathFinder
+{
+	// How many cells each plan may expand
+	public static final int LOOKAHEAD = 32;
+
+	// The learned value of a cell that can't reach the edge of the lookahead (it only leads back in)
+	private static final int DEAD_END = Integer.MAX_VALUE / 4;
+
+	// Cell states (cells not yet seen by this plan aren't visited in the Workspace)
+	private static final byte OPEN		= 1;		// On the open list
+	private static final byte CLOSED	= 2;		// Already expanded
+
+	private int goal = -1;							// The goal cell index (-1 = nothing to plan)
+	private int end = -1;							// The cell index the current stretch of path ends on
+
+	private int[] seen = new int[(LOOKAHEAD * 8) + 1];	// The cells the current plan has seen
+	private int seenCount = 0;						// How many cells are in seen
+
+    // Constructor
+    public LRTAStar(Entity entity) {
+    	super(entity);
+    }
+
+    // Re-calculates the path with new start and goal cells
+    public void newPath(Cell start, Cell goal)
+    {
+    	int from = Grid.indexOf(start.getR(), start.getC());
+
+    	this.goal = Grid.indexOf(goal.getR(), goal.getC());
+
+    	// Initialize variables
+    	path = Path.EMPTY;
+    	expanded = 0;
+    	needPath = true;
+    	isFinished = false;
+
+    	// Don't bother planning if the goal can't be reached
+    	if (rejectUnreachable(from, this.goal))
+    	{
+    		this.goal = -1;
+    		return;
+    	}
+
+    	plan(from);
+    }
+
+    // Plan the next stretch once the entity has walked the last one
+    public void findPath()
+    {
+    	if ((goal < 0) || isFinished || !arrived()) return;
+
+    	plan(end);
+
+    	// The entity has to start following the new stretch from its first waypoint
+    	repaired = true;
+    }
+
+    // Each stretch is ours to walk as soon as it's planned
+    public boolean isCommitted() {
+    	return true;
+    }
+
+    // Planning happens in findPath(), but it is bounded by the lookahead, so it doesn't need the PathScheduler
+    public boolean isIncremental() {
+    	return false;
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Look ahead from cell index from, learn from it, and set our path to the best cell on its edge
+    private void plan(int from)
+    {
+    	Workspace workspace = Workspace.acquire();
+    	int[] table = LearnedHeuristics.get().table(Grid.getCell(goal), unitSize);
+    	int best = lookahead(from, workspace, table);
+
+    	// Boxed in (we are too big to get out), wait for the map to change
+    	if (best < 0)
+    	{
+    		noPath();
+    		path = new Path(new int[] { from }, 0);
+    		end = from;
+    		goal = -1;
+    	}
+
+    	else
+    	{
+    		learn(workspace, table);
+
+    		path = buildPath(best, workspace);
+    		end = best;
+
+    		// The lookahead reached the goal, there's nothing left to plan
+    		if (best == goal)
+    		{
+    			foundGoal();
+
+    			// DEBUG - write final path to file
+    			writePath(Grid.getCell(from), Grid.getCell(goal));
+    		}
+    	}
+
+    	Workspace.release(workspace);
+    }
+
+    // A* out from cell index from for at most LOOKAHEAD expansions, returns the open cell with
+    // the lowest totalCost when it stops (the goal, if it got that far), or -1 if there is none
+    private int lookahead(int from, Workspace workspace, int[] table)
+    {
+    	int[] g = workspace.g, f = workspace.f, parent = workspace.parent;
+    	byte[] state = workspace.state;
+    	IntHeap openList = workspace.intHeap;
+    	int current, neighbor, d, movementCost, steps = 0;
+
+    	seenCount = 0;
+
+    	// Add the start cell to the openList
+    	see(from, workspace);
+    	g[from] = 0;
+    	f[from] = estimate(from, table);
+    	parent[from] = -1;
+    	state[from] = OPEN;
+    	openList.push(from);
+
+    	while (openList.size() > 0)
+    	{
+    		// Stop at the goal, or once we have looked far enough
+    		if ((openList.peek() == goal) || (steps == LOOKAHEAD)) break;
+
+    		current = openList.pop();
+    		state[current] = CLOSED;
+
+    		// Go through the playable cells around us (one bit each)
+    		for (int mask = Grid.getNeighborMask(current); mask != 0; mask &= (mask - 1))
+    		{
+    			d = Integer.numberOfTrailingZeros(mask);
+    			neighbor = current + Grid.getNeighborOffset(d);
+
+    			// Skip cells the entity is too big to stand in (the goal is always allowed)
+    			if ((unitSize > 1) && (neighbor != goal) && (Grid.getClearance(neighbor) < unitSize)) continue;
+
+    			movementCost = g[current] + (Grid.isDiagonal(d) ? DIAGONAL : STRAIGHT);
+
+    			// First time we have seen this cell
+    			if (!workspace.isVisited(neighbor)) see(neighbor, workspace);
+
+    			// Already seen, only update it if this move is better
+    			else if (movementCost >= g[neighbor]) continue;
+
+    			// Store the new costs and parent
+    			f[neighbor] = movementCost + estimate(neighbor, table);
+    			g[neighbor] = movementCost;
+    			parent[neighbor] = current;
+
+    			// Lower it in place if it's open, otherwise (re)open it
+    			if (state[neighbor] == OPEN) openList.decreaseKey(neighbor);
+    			else
+    			{
+    				state[neighbor] = OPEN;
+    				openList.push(neighbor);
+    			}
+    		}
+
+    		steps++;
+    		expanded++;
+    	}
+
+    	return ((openList.size() > 0) ? openList.peek() : -1);
+    }
+
+    // Raise the learned value of every cell the lookahead expanded to the cheapest way from it
+    // out through the edge of the lookahead (Dijkstra inwards from the open cells)
+    private void learn(Workspace workspace, int[] table)
+    {
+    	int[] h = workspace.f;
+    	byte[] state = workspace.state;
+    	IntHeap openList = workspace.intHeap;
+    	int current, neighbor, d, value, cell;
+
+    	openList.clear();
+
+    	// The edge keeps its values, the cells inside it are worked out again from there
+    	for (int i = 0; i < seenCount; i++)
+    	{
+    		cell = seen[i];
+
+    		if (state[cell] == CLOSED) h[cell] = DEAD_END;
+    		else
+    		{
+    			h[cell] = estimate(cell, table);
+    			openList.push(cell);
+    		}
+    	}
+
+    	while (openList.size() > 0)
+    	{
+    		current = openList.pop();
+
+    		// Only the cells we expanded learn anything
+    		for (int mask = Grid.getNeighborMask(current); mask != 0; mask &= (mask - 1))
+    		{
+    			d = Integer.numberOfTrailingZeros(mask);
+    			neighbor = current + Grid.getNeighborOffset(d);
+
+    			if (!workspace.isVisited(neighbor) || (state[neighbor] != CLOSED)) continue;
+
+    			value = h[current] + (Grid.isDiagonal(d) ? DIAGONAL : STRAIGHT);
+
+    			if (value >= h[neighbor]) continue;
+
+    			h[neighbor] = value;
+    			openList.decreaseKey(neighbor);
+    		}
+    	}
+
+    	// Learned values only ever go up
+    	for (int i = 0; i < seenCount; i++)
+    	{
+    		cell = seen[i];
+
+    		if (state[cell] == CLOSED) table[cell] = Math.max(table[cell], Math.min(h[cell], DEAD_END));
+    	}
+    }
+
+    // H() The learned value of cell index, or the straight estimate if we know better than that
+    private int estimate(int index, int[] table) {
+    	return Math.max(table[index], estimate(index, goal));
+    }
+
+    // Visit cell index for this plan, remembering it so learn() can go through what we saw
+    private void see(int index, Workspace workspace)
+    {
+    	workspace.visit(index);
+    	seen[seenCount++] = index;
+    }
+
+    // Whether or not the entity is standing on the end of the current stretch (it stops exactly on each waypoint)
+    private boolean arrived()
+    {
+    	Cell cell = Grid.getCell(end);
+
+    	return ((entity.getX() == cell.getX()) && (entity.getY() == cell.getY()));
+    }
+}
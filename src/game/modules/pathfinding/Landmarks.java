@@ -0,0 +1,201 @@
+package game.modules.pathfinding;
+
+import game.map.Grid;
+import game.map.GridView;
+
+import java.util.Arrays;
+
+// Landmark (ALT) distance tables: the exact cost from a handful of landmark
+// cells to every playable cell. By the triangle inequality, the cost between
+// two cells is at least the difference of their costs from any landmark, which
+// is far better informed than the octile distance on maze-like maps.
+//
+// Tables are built from a GridView on a ViewBuilder, and a new build is queued
+// whenever the map has changed since the last one. Until the tables for the
+// current map are ready, table() returns null and searches fall back to the
+// octile distance (old tables could overestimate once walls are removed).
+public final class Landmarks
+{
+	// The number of landmarks to place
+	public static final int COUNT = 8;
+
+	// The cost of a cell a landmark can't reach
+	static final int UNREACHED = -1;
+
+	// The single set of tables
+	private static Landmarks landmarks = null;
+
+	private volatile Table table = null;			// The newest finished tables
+	private int builds = 0;							// How many builds have finished
+
+	// Builds the tables for the newest map
+	private final ViewBuilder builder = new ViewBuilder("Landmarks") {
+		protected void build(GridView view) {
+			finished(view, compute(view));
+		}
+	};
+
+	// Finished tables for one map version, nothing in it changes once built
+	static final class Table
+	{
+		final int version;							// The Grid version the tables were built for
+		final int[] cells;							// The landmark cell indexes
+		final int[][] cost;							// The cost from each landmark to every cell (UNREACHED if it can't)
+
+		Table(int version, int[] cells, int[][] cost)
+		{
+			this.version = version;
+			this.cells = cells;
+			this.cost = cost;
+		}
+
+	    // The lower bound on the cost between cell indexes from and to (0 if no landmark reaches both)
+	    int estimate(int from, int to)
+	    {
+	    	int best = 0, a, b;
+
+	    	for (int k = 0; k < cost.length; k++)
+	    	{
+	    		a = cost[k][from];
+	    		b = cost[k][to];
+
+	    		if ((a != UNREACHED) && (b != UNREACHED)) best = Math.max(best, Math.abs(a - b));
+	    	}
+
+	    	return best;
+	    }
+	}
+
+    // Constructor
+    private Landmarks() {}
+
+    // Return the landmark tables
+    public static synchronized Landmarks get()
+    {
+    	if (landmarks == null) landmarks = new Landmarks();
+
+    	return landmarks;
+    }
+
+    // Whether or not the tables for the current map are ready (game thread only)
+    public boolean isReady() {
+    	return (table() != null);
+    }
+
+    // Return how many builds have finished
+    public int getBuilds() {
+    	return builds;
+    }
+
+    // Return the tables for the current map, or null if they aren't ready yet, starting
+    // a build in the background if there isn't one for this map already (game thread only)
+    Table table()
+    {
+    	Table current = table;
+
+    	if ((current != null) && (current.version == Grid.getVersion())) return current;
+
+    	builder.update();
+
+    	return null;
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // A build is done, keep it unless a newer one has already finished
+    private synchronized void finished(GridView view, Table result)
+    {
+    	if ((table == null) || (table.version < result.version)) table = result;
+    	builder.done(view);
+
+    	builds++;
+    }
+
+    // Place the landmarks and work out their tables (runs on the builder)
+    private static Table compute(GridView view)
+    {
+    	int size = view.getSize();
+    	int count = 0;
+    	int[] cells = new int[COUNT];
+    	int[][] cost = new int[COUNT][];
+    	int[] nearest = new int[size];			// The cost from each cell to its nearest landmark so far
+    	IntHeap openList = null;
+
+    	Arrays.fill(nearest, Integer.MAX_VALUE);
+
+    	while (count < COUNT)
+    	{
+    		// The next landmark is the playable cell furthest from all the others (anything
+    		// no landmark reaches counts as furthest, so every separate area gets one)
+    		int next = -1;
+
+    		for (int index = 0; index < size; index++)
+    		{
+    			if (!view.isPlayable(view.rowFromIndex(index), view.columnFromIndex(index))) continue;
+    			if ((next < 0) || (nearest[index] > nearest[next])) next = index;
+    		}
+
+    		// Nothing playable, or every cell already has a landmark
+    		if ((next < 0) || (nearest[next] == 0)) break;
+
+    		cells[count] = next;
+    		cost[count] = new int[size];
+    		openList = new IntHeap(size, cost[count]);
+
+    		dijkstra(view, next, cost[count], openList);
+
+    		for (int index = 0; index < size; index++)
+    			if (cost[count][index] != UNREACHED) nearest[index] = Math.min(nearest[index], cost[count][index]);
+
+    		count++;
+    	}
+
+    	return new Table(view.getVersion(), Arrays.copyOf(cells, count), Arrays.copyOf(cost, count));
+    }
+
+    // Fill cost with the cost from cell index from to every cell in view
+    private static void dijkstra(GridView view, int from, int[] cost, IntHeap openList)
+    {
+    	int current, neighbor, r, c, movementCost;
+    	boolean[] closed = new boolean[cost.length];
+
+    	Arrays.fill(cost, Integer.MAX_VALUE);
+
+    	cost[from] = 0;
+    	openList.push(from);
+
+    	while (openList.size() > 0)
+    	{
+    		current = openList.pop();
+    		closed[current] = true;
+
+    		r = view.rowFromIndex(current);
+    		c = view.columnFromIndex(current);
+
+    		// Search the surrounding 8 cells for cheaper ways round
+    		for (int nr = r - 1; nr <= r + 1; nr++)
+    		{
+    			for (int nc = c - 1; nc <= c + 1; nc++)
+    			{
+    				if (((nr == r) && (nc == c)) || !view.isPlayable(nr, nc)) continue;
+
+    				neighbor = view.indexOf(nr, nc);
+    				movementCost = cost[current] + (((nr != r) && (nc != c)) ? PathFinder.DIAGONAL : PathFinder.STRAIGHT);
+
+    				if (closed[neighbor] || (movementCost >= cost[neighbor])) continue;
+
+    				cost[neighbor] = movementCost;
+    				openList.decreaseKey(neighbor);
+    			}
+    		}
+    	}
+
+    	// Anything we never reached
+    	for (int index = 0; index < cost.length; index++)
+    		if (cost[index] == Integer.MAX_VALUE) cost[index] = UNREACHED;
+    }
+}
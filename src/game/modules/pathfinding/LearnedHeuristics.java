@@ -0,0 +1,75 @@
+package game.modules.pathfinding;
+
+import game.map.Cell;
+import game.map.Grid;
+import game.map.GridListener;
+
+import java.util.HashMap;
+
+// The heuristic values learned by LRTAStar so far, one flat int[] over the
+// Grid cells per goal cell (and unit size, since big units learn the longer
+// way round narrow gaps). Every entity heading for a goal reads and raises
+// the same table, so what one learns about a dead end the next doesn't have to
+// learn again, and since the tables outlive the entities, the spawn and goal
+// pairs we see round after round get better every round.
+//
+// A learned value is only ever a lower bound on the distance to the goal.
+// Blocking a cell can only make distances longer, so the tables survive that,
+// but opening one may make them shorter, so then every table is thrown away.
+public final class LearnedHeuristics implements GridListener
+{
+	// The single set of tables for the current Grid
+	private static LearnedHeuristics learnedHeuristics = null;
+
+	private Object builtFor = null;					// The Grid cell list the tables were learned on
+	private HashMap<Integer, int[]> tables = new HashMap<Integer, int[]>();	// The tables, by goal cell index and unit size
+
+    // Constructor
+    private LearnedHeuristics() {}
+
+    // Return the tables for the current Grid
+    public static synchronized LearnedHeuristics get()
+    {
+    	if (learnedHeuristics == null)
+    	{
+    		learnedHeuristics = new LearnedHeuristics();
+    		Grid.addListener(learnedHeuristics);
+    	}
+
+    	return learnedHeuristics;
+    }
+
+    // Return the table for units unitSize cells across heading for goal, by cell index (0 = nothing learned about that cell yet)
+    public synchronized int[] table(Cell goal, int unitSize)
+    {
+    	// A new map was loaded, everything we have is for the old one
+    	if (builtFor != Grid.getCells())
+    	{
+    		tables.clear();
+    		builtFor = Grid.getCells();
+    	}
+
+    	Integer index = (Grid.indexOf(goal.getR(), goal.getC()) * (Grid.MAX_CLEARANCE + 1)) + Math.min(unitSize, Grid.MAX_CLEARANCE);
+    	int[] table = tables.get(index);
+
+    	if (table == null) tables.put(index, table = new int[Grid.getSize()]);
+
+    	return table;
+    }
+
+    // Return how many goals we have tables for
+    public synchronized int size() {
+    	return tables.size();
+    }
+
+    // Forget everything learned
+    public synchronized void clear() {
+    	tables.clear();
+    }
+
+    // A cell changed, a newly opened one may have made our values too high
+    public synchronized void cellChanged(Cell cell)
+    {
+    	if (cell.isPlayable()) tables.clear();
+    }
+}
@@ -0,0 +1,263 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+
+import java.util.Arrays;
+
+// Heads for whichever of a set of goal cells is nearest, in one search. It is
+// ArrayAStar with many targets: the estimate is the distance to the closest
+// goal we can reach (still a lower bound on the distance to any of them), and
+// the search stops at the first goal it expands, which is the nearest one.
+// With more goals than MAX_TARGETS, working out that minimum for every cell
+// costs more than it saves, so the estimate is dropped and the search is a
+// plain Dijkstra out from the start.
+//
+// The goals are the cells given to setGoals(), or every cell marked as a goal
+// on the map (see Grid.getGoals) if none were given, or just the goal handed
+// to newPath() if the map has none either.
+public final class NearestGoal extends PathFinder
+{
+	// The most goals we work out an estimate for
+	public static final int MAX_TARGETS = 16;
+
+	// Cell states (cells not yet seen by this search aren't visited in the Workspace)
+	private static final byte OPEN		= 1;		// On the open list
+	private static final byte CLOSED	= 2;		// Already expanded
+
+	private Cell[] goals = null;					// The goals we were given (null = every goal on the map)
+
+	private int start = -1;							// The start cell index
+	private int[] targets = null;					// The cell indexes of the goals we can reach, in order
+	private boolean estimated = false;				// Whether or not we use an estimate (few enough targets)
+
+	private Workspace workspace = null;				// Our search arrays, reused between searches
+
+	private int[] g = null;							// G() for each cell
+	private int[] f = null;							// F() for each cell (the open list is sorted by this)
+	private int[] parent = null;					// The parent index of each cell (-1 = none)
+	private byte[] state = null;					// OPEN or CLOSED for each visited cell
+
+	private IntHeap openList = null;				// Stores cell indexes we have to check out
+
+    // Constructor
+    public NearestGoal(Entity entity) {
+    	super(entity);
+    }
+
+    // Head for the nearest of goals from the next newPath() on (null = every goal on the map)
+    public void setGoals(Cell[] goals) {
+    	this.goals = goals;
+    }
+
+    // Re-calculates the path from a new start cell to the nearest goal (goal is only used if there are no others)
+    public void newPath(Cell start, Cell goal)
+    {
+    	// Initialize arrays
+    	initialize();
+
+    	this.start = Grid.indexOf(start.getR(), start.getC());
+    	targets = targets(this.start, Grid.indexOf(goal.getR(), goal.getC()));
+    	estimated = (targets.length <= MAX_TARGETS);
+
+    	// Don't bother searching if none of the goals can be reached
+    	if (targets.length == 0)
+    	{
+    		noPath();
+    		needPath = false;
+    		cleanUp();
+    		return;
+    	}
+
+    	// Add the start cell to the openList
+    	workspace.visit(this.start);
+    	g[this.start] = 0;
+    	f[this.start] = estimate(this.start);
+    	parent[this.start] = -1;
+    	state[this.start] = OPEN;
+    	openList.push(this.start);
+    }
+
+    // Calculating the best path to the nearest goal
+    public void findPath()
+    {
+    	// Make sure we have a starting point and that we don't already have a path
+        if (!needPath || start < 0) return;
+
+        int steps = 0;						// Used to count the number of steps taken per method call
+        int mask, d;						// The playable cells around current, and the direction of one
+        int current = -1, neighbor;			// The cell we are working on and its neighbor
+        int movementCost;					// The cost of moving through current to neighbor
+
+        // Loop through all possible cells until we expand a goal
+        while (openList.size() > 0)
+        {
+        	// Set our current cell to the one with the lowest totalCost
+        	current = openList.pop();
+        	state[current] = CLOSED;
+
+        	// The first goal we expand is the nearest, we no longer need a path
+        	if (Arrays.binarySearch(targets, current) >= 0) foundGoal();
+
+        	// Otherwise, continue to search for next best move
+        	else
+        	{
+        		// Go through the playable cells around us (one bit each)
+        		for (mask = Grid.getNeighborMask(current); mask != 0; mask &= (mask - 1))
+        		{
+        			d = Integer.numberOfTrailingZeros(mask);
+        			neighbor = current + Grid.getNeighborOffset(d);
+
+        			// Skip cells the entity is too big to stand in (goals are always allowed)
+        			if ((unitSize > 1) && (Grid.getClearance(neighbor) < unitSize) && (Arrays.binarySearch(targets, neighbor) < 0)) continue;
+
+        			movementCost = g[current] + (Grid.isDiagonal(d) ? DIAGONAL : STRAIGHT);
+
+        			// First time we have seen this cell
+        			if (!workspace.isVisited(neighbor))
+        			{
+        				workspace.visit(neighbor);
+        				expanded++;
+        			}
+
+        			// Already seen, only update it if this move is better
+        			else if (movementCost >= g[neighbor]) continue;
+
+        			// Store the new costs and parent
+        			f[neighbor] = movementCost + estimate(neighbor);
+        			g[neighbor] = movementCost;
+        			parent[neighbor] = current;
+
+        			// Lower it in place if it's open, otherwise (re)open it
+        			if (state[neighbor] == OPEN) openList.decreaseKey(neighbor);
+        			else
+        			{
+        				state[neighbor] = OPEN;
+        				openList.push(neighbor);
+        			}
+        		}
+
+        		// Increase steps taken on this loop
+        		steps++;
+        	}
+
+            // If we are finished or have reached our limit for this loop, build best path to this point and exit
+            if (!needPath || reachedLimit(steps))
+            {
+            	path = buildPath(current, workspace);
+            	break;
+            }
+        }
+
+        // Entity is unable to move to any goal (path blocked), there is nothing left to search
+        if (needPath && openList.size() == 0)
+        {
+        	noPath();
+        	needPath = false;
+        	cleanUp();
+        	return;
+        }
+
+        // Path is complete
+        if (!needPath)
+        {
+        	// DEBUG - write final path to file
+        	writePath(Grid.getCell(start), Grid.getCell(current));
+
+        	// If we are done, clean up
+        	cleanUp();
+        }
+    }
+
+    // Hand our workspace back if we are dropped mid-search
+    public void dispose() {
+    	cleanUp();
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // The cell indexes of the goals reachable from cell index from, in order (fallback is used if there are no goals at all)
+    private int[] targets(int from, int fallback)
+    {
+    	int[] all;
+    	int count = 0;
+
+    	// The goals we were given
+    	if (goals != null)
+    	{
+    		all = new int[goals.length];
+
+    		for (int i = 0; i < goals.length; i++) all[i] = Grid.indexOf(goals[i].getR(), goals[i].getC());
+    	}
+
+    	// Every goal on the map
+    	else all = Grid.getGoals();
+
+    	// Nowhere else to go
+    	if (all.length == 0) all = new int[] { fallback };
+
+    	int[] reachable = new int[all.length];
+
+    	// Goals in another component can never be expanded, leave them out of the estimate too
+    	for (int i = 0; i < all.length; i++) if (Grid.connected(from, all[i])) reachable[count++] = all[i];
+
+    	reachable = Arrays.copyOf(reachable, count);
+    	Arrays.sort(reachable);
+
+    	return reachable;
+    }
+
+    // H() The distance to the closest target (0 if there are too many targets to check)
+    private int estimate(int from)
+    {
+    	if (!estimated) return 0;
+
+    	int h = Integer.MAX_VALUE;
+
+    	for (int i = 0; i < targets.length; i++) h = Math.min(h, estimate(from, targets[i]));
+
+    	return h;
+    }
+
+    // Perform clean-up operations when the final path is built
+    private void cleanUp()
+    {
+    	// Hand our workspace back to the pool
+    	Workspace.release(workspace);
+
+    	workspace = null;
+    	openList = null;
+    	g = f = parent = null;
+    	state = null;
+
+    	// Forget the start and targets so findPath() does nothing until newPath()
+    	start = -1;
+    	targets = null;
+    }
+
+    // Initialize pathFinder arrays
+    private void initialize()
+    {
+	    // Reuse our workspace if we still have one, otherwise grab one from the pool
+    	if ((workspace == null) || (workspace.size() != Grid.getSize())) workspace = Workspace.acquire();
+    	else workspace.reset();
+
+    	g = workspace.g;
+    	f = workspace.f;
+    	parent = workspace.parent;
+    	state = workspace.state;
+    	openList = workspace.intHeap;
+
+    	path = Path.EMPTY;
+
+    	// Initialize variables
+    	expanded = 0;
+    	needPath = true;
+    	isFinished = false;
+    }
+}
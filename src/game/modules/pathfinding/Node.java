@@ -12,6 +12,13 @@ public class Node
     private int movementCost 	= 0; 		// G() = Movement Cost from parent cell to this cell
     private int estimatedCost 	= 0; 		// H() = Estimated Cost from this cell to goal cell
     
+    private int index			= -1;		// This node's slot in the Heap holding it (-1 = none)
+    
+    private int bucket			= -1;		// The cost this node is filed under in a BucketQueue (-1 = none)
+    private Node previous		= null;		// The node before this one in its bucket
+    private Node next			= null;		// The node after this one in its bucket
+    private int branches		= 0;		// How many of this node's children still lead to the open list (see AStar)
+    
     // Constructor
     public Node(Cell cell)
     {
@@ -61,4 +68,67 @@ public class Node
     public Node getParent() {
     	return parent;
     }
+    
+    // Clear this node's parent, costs and slot so it can be reused by a new search
+    void reset()
+    {
+    	parent = null;
+    	setCosts(0, 0);
+    	index = -1;
+    	branches = 0;
+    	setLinks(-1, null, null);
+    }
+    
+    // Return this node's slot in its Heap
+    int getIndex() {
+    	return index;
+    }
+    
+    // Set this node's slot in its Heap
+    void setIndex(int index) {
+    	this.index = index;
+    }
+    
+    // Return how many of this node's children still lead to the open list
+    int getBranches() {
+    	return branches;
+    }
+    
+    // Set how many of this node's children still lead to the open list
+    void setBranches(int branches) {
+    	this.branches = branches;
+    }
+    
+    // Return the cost this node is filed under in its BucketQueue (-1 if it isn't in one)
+    int getBucket() {
+    	return bucket;
+    }
+    
+    // Return the node before this one in its bucket
+    Node getPrevious() {
+    	return previous;
+    }
+    
+    // Return the node after this one in its bucket
+    Node getNext() {
+    	return next;
+    }
+    
+    // Set the node before this one in its bucket
+    void setPrevious(Node previous) {
+    	this.previous = previous;
+    }
+    
+    // Set the node after this one in its bucket
+    void setNext(Node next) {
+    	this.next = next;
+    }
+    
+    // File this node under bucket, between previous and next
+    void setLinks(int bucket, Node previous, Node next)
+    {
+    	this.bucket = bucket;
+    	this.previous = previous;
+    	this.next = next;
+    }
 }
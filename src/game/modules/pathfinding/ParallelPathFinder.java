@@ -0,0 +1,85 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+
+import java.util.concurrent.CompletableFuture;
+
+// Hands the search to the PathService instead of running it in doLogic(), so
+// it happens on a worker thread. The path arrives (already smoothed) at the
+// frame boundary after a worker finishes it, and also completes getFuture().
+public final class ParallelPathFinder extends PathFinder
+{
+	private PathRequest request = null;				// The request we are waiting on
+	private CompletableFuture<Path> future = null;	// The future of the path we asked for last
+
+    // Constructor
+    public ParallelPathFinder(Entity entity) {
+    	super(entity);
+    }
+
+    // Re-calculates the path with new start and goal cells
+    public void newPath(Cell start, Cell goal)
+    {
+    	path = Path.EMPTY;
+
+    	// Initialize variables
+    	expanded = 0;
+    	needPath = true;
+    	isFinished = false;
+
+    	// Ask for the path, anything we were waiting on is cancelled
+    	if (request != null) request.cancel();
+
+    	request = new PathRequest(this, start, goal, unitSize);
+    	future = request.future;
+    	PathService.get().submit(request);
+    }
+
+    // Nothing to do here, the PathService works on our request
+    public void findPath() {}
+
+    // The search happens on the PathService's workers, not in findPath()
+    public boolean isIncremental() {
+    	return false;
+    }
+
+    // Cancel the request we are waiting on
+    public void dispose()
+    {
+    	if (request != null) request.cancel();
+
+    	request = null;
+    }
+
+    // Return the future for the path we asked for last (null before newPath())
+    public CompletableFuture<Path> getFuture() {
+    	return future;
+    }
+
+    // Called by the PathService at a frame boundary with a solved request
+    void receive(PathRequest solved)
+    {
+    	// We have asked for a different path since then
+    	if (solved != request) return;
+
+    	request = null;
+    	expanded = solved.expanded;
+
+    	// Entity is unable to move to goal (path blocked, or the search failed)
+    	if (solved.cells == null)
+    	{
+    		noPath();
+    		needPath = false;
+    		solved.complete(path);
+    		return;
+    	}
+
+    	path = buildPath(solved.cells);
+    	foundGoal();
+    	solved.complete(path);
+
+    	// DEBUG - write final path to file
+    	writePath(solved.start, solved.goal);
+    }
+}
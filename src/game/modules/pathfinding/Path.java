@@ -0,0 +1,140 @@
+package game.modules.pathfinding;
+
+import game.map.Cell;
+import game.map.Grid;
+
+// A path as its waypoint cell indexes packed into an int[] (start first, goal
+// last), plus the movement cost of getting to the last one. It holds nothing
+// from the search that found it, so the search can let go of its Nodes and
+// arrays as soon as the path is built, and four bytes a waypoint is all that
+// is kept while an entity walks it.
+//
+// Paths never change once built, which lets the PathCache hand the same one
+// to every entity that asks; each entity walks it with a Cursor of its own.
+// A search that settles its path a piece at a time (see AStar) hands out a
+// longer Path over the same array each time, only ever writing past the end
+// of the ones it has already handed out.
+//
+// A timed path (see CooperativeAStar) has one waypoint per tick of the
+// Reservations clock, and an entity mustn't set off for a waypoint before the
+// tick it was planned to leave on.
+public final class Path
+{
+	// A path with nothing on it
+	public static final Path EMPTY = new Path(new int[0], 0);
+
+	private final int[] cells;					// The waypoint cell indexes, start first
+	private final int size;						// How many of cells are ours
+	private final int cost;						// The movement cost from the first waypoint to the last
+	private final int tick;						// The tick we stand on the first waypoint (-1 = not timed)
+
+	// Walks a Path one waypoint at a time, from the start towards the goal
+	public static final class Cursor
+	{
+		private Path path;						// The path we are walking
+		private int position = 0;				// The waypoint we are heading for
+
+	    // Constructor
+	    private Cursor(Path path) {
+	    	this.path = path;
+	    }
+
+	    // Return the path we are walking
+	    public Path getPath() {
+	    	return path;
+	    }
+
+	    // Return how many waypoints we have moved past
+	    public int getPosition() {
+	    	return position;
+	    }
+
+	    // Whether or not there are waypoints left to head for
+	    public boolean hasNext() {
+	    	return (position < path.size);
+	    }
+
+	    // Whether or not we may set off for the waypoint we are heading for during tick now
+	    public boolean isDue(int now) {
+	    	return ((path.tick < 0) || (now >= path.tick + position - 1));
+	    }
+
+	    // Return the waypoint we are heading for, without moving past it
+	    public Cell peek() {
+	    	return Grid.getCell(path.cells[position]);
+	    }
+
+	    // Move past the waypoint we were heading for
+	    public void advance() {
+	    	position++;
+	    }
+
+	    // Return the waypoint we are heading for and move past it
+	    public Cell next()
+	    {
+	    	Cell cell = peek();
+	    	position++;
+
+	    	return cell;
+	    }
+
+	    // Carry on along a newer version of the same path (a partial path that has grown), keeping our place
+	    public void follow(Path path) {
+	    	this.path = path;
+	    }
+	}
+
+    // Constructor, cells are the waypoint cell indexes start first (kept, not copied)
+    Path(int[] cells, int cost) {
+    	this(cells, cells.length, cost, -1);
+    }
+
+    // Return a path over the first size cells of a longer array, which must not change (but may be written past)
+    static Path prefix(int[] cells, int size, int cost) {
+    	return new Path(cells, size, cost, -1);
+    }
+
+    // Constructor for a timed path, waypoint n is stood on during tick + n
+    Path(int[] cells, int cost, int tick) {
+    	this(cells, cells.length, cost, tick);
+    }
+
+    // Constructor, waypoint n is stood on during tick + n (or untimed if tick is -1)
+    private Path(int[] cells, int size, int cost, int tick)
+    {
+    	this.cells = cells;
+    	this.size = size;
+    	this.cost = cost;
+    	this.tick = tick;
+    }
+
+    // Return the number of waypoints
+    public int size() {
+    	return size;
+    }
+
+    // Return the cell index of waypoint n (0 = the start)
+    public int getIndex(int n) {
+    	return cells[n];
+    }
+
+    // Return the Cell of waypoint n (0 = the start)
+    public Cell getCell(int n) {
+    	return Grid.getCell(cells[n]);
+    }
+
+    // Return the movement cost from the first waypoint to the last
+    public int getCost() {
+    	return cost;
+    }
+
+    // Return the tick waypoint n is stood on (-1 if the path isn't timed)
+    public int getTick(int n) {
+    	return ((tick < 0) ? -1 : tick + n);
+    }
+
+    // Return a new Cursor at the start of the path
+    public Cursor cursor() {
+    	return new Cursor(this);
+    }
+}
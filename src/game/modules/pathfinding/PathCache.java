@@ -0,0 +1,129 @@
+package game.modules.pathfinding;
+
+import game.map.Cell;
+import game.map.Grid;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Finished paths kept by start cell, goal cell, unit size, search mode (see
+// PathFinder) and map version, so entities asking for a path we have already
+// found get it without searching. Each engine only gets back paths it found
+// itself, since their paths differ (any-angle, terrain weighted, and so on).
+// Paths are only good for the map version they were found on; as soon as the
+// Grid's version moves on every path we hold is dropped. When the cache is full
+// the least recently used path goes first.
+public final class PathCache
+{
+	// The default number of paths to keep
+	public static final int CAPACITY = 256;
+
+	// The single cache
+	private static PathCache pathCache = null;
+
+	private int capacity = CAPACITY;				// The most paths we will keep (0 = caching off)
+	private int version = -1;						// The map version our paths were found on
+
+	private int hits = 0;							// Lookups we had a path for
+	private int misses = 0;							// Lookups we didn't
+
+	// The paths by start index, goal index, unit size and search mode, in least to most recently used order
+	private LinkedHashMap<Long, Path> paths = new LinkedHashMap<Long, Path>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Long, Path> eldest) {
+			return (size() > capacity);
+		}
+	};
+
+    // Constructor
+    private PathCache() {}
+
+    // Return the cache
+    public static synchronized PathCache get()
+    {
+    	if (pathCache == null) pathCache = new PathCache();
+
+    	return pathCache;
+    }
+
+    // Return the path from start to goal for units size cells across on the current map, found by the
+    // engine for search mode (or null if we don't have it)
+    public synchronized Path lookup(Cell start, Cell goal, int size, int mode)
+    {
+    	update();
+
+    	Path path = paths.get(key(start, goal, size, mode));
+
+    	if (path == null) misses++;
+    	else hits++;
+
+    	return path;
+    }
+
+    // Keep a finished path from start to goal for units size cells across, found by the engine for search
+    // mode on map version
+    public synchronized void store(Cell start, Cell goal, int size, int mode, int version, Path path)
+    {
+    	update();
+
+    	// The map changed while we were searching, the path may be wrong
+    	if ((version != this.version) || (capacity == 0)) return;
+
+    	paths.put(key(start, goal, size, mode), path);
+    }
+
+    // Return the most paths we will keep
+    public int getCapacity() {
+    	return capacity;
+    }
+
+    // Change the most paths we will keep (0 turns caching off), dropping the least recently used if we have too many
+    public synchronized void setCapacity(int capacity)
+    {
+    	this.capacity = Math.max(0, capacity);
+
+    	// Drop the oldest paths until we fit
+    	while (paths.size() > this.capacity) paths.remove(paths.keySet().iterator().next());
+    }
+
+    // Return the number of lookups we had a path for
+    public int getHits() {
+    	return hits;
+    }
+
+    // Return the number of lookups we didn't have a path for
+    public int getMisses() {
+    	return misses;
+    }
+
+    // Return the number of paths we are holding
+    public synchronized int size() {
+    	return paths.size();
+    }
+
+    // Forget every path and reset the counters
+    public synchronized void clear()
+    {
+    	paths.clear();
+    	hits = misses = 0;
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // The key for a path from start to goal (mode in the top byte and size in the next, maps are nowhere near 2^24 cells)
+    private static Long key(Cell start, Cell goal, int size, int mode) {
+    	return (((long) mode) << 56) | (((long) size) << 48) | (((long) Grid.indexOf(start.getR(), start.getC())) << 24) | Grid.indexOf(goal.getR(), goal.getC());
+    }
+
+    // Drop every path if the map has changed since they were found
+    private void update()
+    {
+    	if (version == Grid.getVersion()) return;
+
+    	paths.clear();
+    	version = Grid.getVersion();
+    }
+}
@@ -0,0 +1,345 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+// The base class for all pathfinding engines: newPath() starts a search,
+// findPath() runs it (optionally a few steps per call) and getPath() returns
+// the smoothed waypoints as a Path (packed cell indexes, start first).
+public abstract class PathFinder
+{
+	// Search modes
+	public static final int ASTAR = 0;					// Node based A* (AStar)
+	public static final int ARRAY = 1;					// Primitive-array A* (ArrayAStar)
+	public static final int JPS = 2;					// Jump Point Search (JumpPointSearch)
+	public static final int HPA = 3;					// Hierarchical A* (HPAStar)
+	public static final int DSTAR = 4;					// D* Lite incremental replanning (DStarLite)
+	public static final int FLOW = 5;					// Shared goal flow fields (FlowFollower)
+	public static final int BIDIRECTIONAL = 6;			// Bidirectional A* (BidirectionalAStar)
+	public static final int PARALLEL = 7;				// A* on the PathService's worker threads (ParallelPathFinder)
+	public static final int THETA = 8;					// Any-angle Theta* (ThetaStar)
+	public static final int LAZY_THETA = 9;				// Any-angle Lazy Theta* (ThetaStar)
+	public static final int COOPERATIVE = 10;			// Windowed cooperative A* around other entities (CooperativeAStar)
+	public static final int FIRST_MOVE = 11;				// Lookups in the compressed first-move table (FirstMoveFollower)
+	public static final int NEAREST = 12;				// The nearest of several goals in one search (NearestGoal)
+	public static final int LRTA = 13;					// Real-time search with a shared learned heuristic (LRTAStar)
+
+	// Movement costs
+	public static final int STRAIGHT = 10;				// The movement cost for going straight (horizontal/vertical)
+	public static final int DIAGONAL = 14;				// The movement cost for going diagonally (approx. sqrt(2) * STRAIGHT)
+
+	protected Entity entity;							// The entity this instance is associated with
+
+	protected int expanded = 0;    						// How many nodes we have expanded
+	protected int limit = 0;    						// How far to calculate in each loop (0 = until goal is found)
+	protected int unitSize = 1;							// How many cells across the entity is (see Grid.getClearance)
+	private int taken = 0;								// How many steps the current findPath(int) call has taken
+
+	protected boolean needPath = false;					// Whether or not we need to be building a path
+	protected boolean isFinished = false;				// Whether or not we have finished building the current path
+	protected boolean repaired = false;					// Whether or not the path was replaced by one from somewhere else
+
+	protected Path path = null;							// Our path (Path.EMPTY until we have one)
+
+    // Constructor
+    public PathFinder(Entity entity) {
+    	this.entity = entity;
+    }
+
+    // Re-calculates the path with new start and goal cells
+    public abstract void newPath(Cell start, Cell goal);
+
+    // Continue building the path started by newPath()
+    public abstract void findPath();
+
+    // Continue building the path, taking at most steps steps this call, and return how many it took (see PathScheduler)
+    public int findPath(int steps)
+    {
+    	int saved = limit;
+
+    	limit = steps;
+    	taken = 0;
+    	findPath();
+    	limit = saved;
+
+    	return taken;
+    }
+
+    // Whether or not findPath() does the searching (false if the search happens somewhere else)
+    public boolean isIncremental() {
+    	return true;
+    }
+
+    // Whether or not paths are weighted by terrain cost (see Cell.getCost), otherwise every playable cell costs the same
+    public boolean usesTerrain() {
+    	return false;
+    }
+
+    // For testing
+    public int getExpanded() {
+        return expanded;
+    }
+
+    // Return the path
+    public Path getPath()
+    {
+        return path;
+    }
+
+    // Return the size of the path
+    public int getPathSize() {
+    	return path.size();
+    }
+
+    // Whether or not we have a path to move along
+    public boolean pathExists()
+    {
+    	if (path == null) return false;
+    	return ((path.size() > 0) ? true : false);
+    }
+
+    // Whether or not we are building a path
+    public boolean buildingPath() {
+    	return needPath;
+    }
+
+    public boolean pathIsFinished() {
+        return isFinished;
+    }
+
+    // Number of steps to take per loop
+    public void setStepLimit(int steps) {
+    	limit = steps;
+    }
+
+    // How many cells across the entity is, engines that look at clearance keep it out of
+    // cells it doesn't fit in (takes effect from the next newPath())
+    public void setUnitSize(int cells) {
+    	unitSize = Math.max(1, Math.min(cells, Grid.MAX_CLEARANCE));
+    }
+
+    // Return how many cells across the entity is
+    public int getUnitSize() {
+    	return unitSize;
+    }
+
+    // Whether or not the path so far is settled: it will only ever grow as the search carries on,
+    // so the entity can start walking it (a best guess that may still change isn't)
+    public boolean isCommitted() {
+    	return isFinished;
+    }
+
+    // Whether or not the path was replaced by one starting from the entity's
+    // current location (since the last time this was asked)
+    public boolean pathRepaired()
+    {
+    	boolean wasRepaired = repaired;
+    	repaired = false;
+
+    	return wasRepaired;
+    }
+
+    // Release anything held between searches, the engine won't be used again
+    public void dispose() {}
+
+	/**
+	 *
+	 * Protected Functions
+	 *
+	 **/
+
+    // H() The estimate heuristic from (r1, c1) to (r2, c2)
+    protected static int estimate(int r1, int c1, int r2, int c2)
+    {
+    	int dr = Math.abs(r1 - r2);
+    	int dc = Math.abs(c1 - c2);
+
+        // The Manhattan Distance from the start cell to the goal cell (horizontal/vertical)
+        int straightSteps = (dr + dc);
+
+        // The number of steps we would take going diagonally
+        int diagonalSteps = Math.min(dr, dc);
+
+        // The actual heuristic for moving horizontally, vertically, or diagonally
+        return (DIAGONAL * diagonalSteps) + (STRAIGHT * (straightSteps - (2 * diagonalSteps)));
+    }
+
+    // H() The estimate heuristic between two cell indexes
+    protected static int estimate(int from, int to)
+    {
+    	return estimate(Grid.rowFromIndex(from), Grid.columnFromIndex(from), Grid.rowFromIndex(to), Grid.columnFromIndex(to));
+    }
+
+    // Give up straight away if the goal is in a different connected component from the start
+    // (see Grid.connected), returns true if the search was rejected
+    protected boolean rejectUnreachable(int start, int goal)
+    {
+    	if (Grid.connected(start, goal)) return false;
+
+    	// Entity is unable to move to goal, and searching won't change that
+    	noPath();
+    	needPath = false;
+
+    	return true;
+    }
+
+    // Whether or not the search has hit its step limit for this loop (engines check after every
+    // step, which is also how findPath(int) counts the steps taken)
+    protected boolean reachedLimit(int steps)
+    {
+    	taken = steps;
+
+    	return ((limit > 0) && (steps > 0) && (steps % limit == 0));
+    }
+
+    // Build the best path up to cell index from by following workspace parents,
+    // keeping only the points we can't walk straight past
+    protected Path buildPath(int from, Workspace workspace)
+    {
+    	int current, next, length = 0;
+    	int[] parent = workspace.parent;
+    	int cost = workspace.g[from];					// Getting to the end of the path is the cost of the whole path
+
+    	// The smoothed path is never longer than the chain of parents
+    	for (current = from; current >= 0; current = parent[current]) length++;
+
+    	// Fill the waypoints in from the back, since we walk from the end of the path to its start
+    	int[] waypoints = new int[length];
+    	int count = length;
+
+    	// Add the first point to our list
+    	waypoints[--count] = from;
+
+    	// Nothing to smooth if we haven't left the start
+    	if ((current = parent[from]) < 0) return new Path(waypoints, cost);
+
+    	// Loop through our generated path and add only the necessary points
+    	while ((next = parent[current]) >= 0)
+    	{
+    		// If we can't skip the point, add it to our list and
+    		// set our new starting point to our current location
+    		if (!walkable(Grid.getCell(from), Grid.getCell(next)))
+    			waypoints[--count] = from = current;
+
+    		// Proceed to next point
+    		current = next;
+    	}
+
+    	// Add the last point to our list
+    	waypoints[--count] = current;
+
+    	// Return our smoothed path
+    	return new Path(Arrays.copyOfRange(waypoints, count, length), cost);
+    }
+
+    // Build the smoothed path through a list of neighboring cell indexes (start first, goal last)
+    protected Path buildPath(int[] cells)
+    {
+    	// Borrow a workspace to hold the cells as a chain of parents
+    	Workspace workspace = Workspace.acquire();
+    	int previous = -1, current;
+
+    	for (int i = 0; i < cells.length; i++)
+    	{
+    		current = cells[i];
+
+    		workspace.visit(current);
+    		workspace.parent[current] = previous;
+    		workspace.g[current] = workspace.f[current] = ((previous < 0) ? 0 : workspace.g[previous] + estimate(previous, current));
+
+    		previous = current;
+    	}
+
+    	Path smoothed = buildPath(previous, workspace);
+    	Workspace.release(workspace);
+
+    	return smoothed;
+    }
+
+    // Whether or not the entity can walk in a straight line from Cell a to Cell b without
+    // its bounding box touching a cell that isn't playable (see Grid.lineOfSight)
+    protected boolean walkable(Cell a, Cell b)
+    {
+    	// Entities without a sprite yet are treated as a point
+    	int width = ((entity.getSprite() == null) ? 0 : entity.getWidth());
+    	int height = ((entity.getSprite() == null) ? 0 : entity.getHeight());
+
+    	return Grid.lineOfSight(a.getX(), a.getY(), b.getX(), b.getY(), width, height);
+    }
+
+    // Path is finished
+    protected void foundGoal()
+    {
+    	// Tell the engine we are done
+    	needPath = false;
+    	isFinished = true;
+    }
+
+    // Report that the goal can't be reached
+    protected void noPath()
+    {
+       	// TODO
+       	if (entity.debugOn())
+       		System.out.println("Entity #" + entity.getNumber() + ": can't move!");
+    }
+
+    // DEBUG - write final path to file
+    protected void writePath(Cell start, Cell goal)
+    {
+    	if (!entity.debugOn()) return;
+
+        // Output the path information for each entity to text files
+       	try
+       	{
+           	Cell cell;
+           	BufferedWriter out = new BufferedWriter(new FileWriter("entityPath-" + entity.getNumber() + ".txt"));
+
+           	// Summary
+    	   	out.write(
+    	   		"Path from (" + start.getR() + "," + start.getC() +
+    	   		") to (" + goal.getR() + "," + goal.getC() + ")"
+    	   	);
+    	   	out.newLine();
+           	out.write("Total nodes expanded: " + getExpanded() + ".");
+           	out.newLine();
+           	out.write("Final path size: " + getPathSize() + " nodes.");
+           	out.newLine();
+           	out.write("Final path cost: " + path.getCost() + ".");
+           	out.newLine();
+
+           	// Column headers
+           	out.newLine();
+           	out.write("[Position]\t[Cell]\t\t[Special]");
+
+           	// Loop through final path and output each move
+           	for (int x = 1; x <= getPathSize(); x++)
+           	{
+           		cell = path.getCell(x - 1);
+
+           	    out.newLine();
+           	    out.write(x + ".\t\t(" + cell.getR() + "," + cell.getC() + ")");
+
+           	    // Check for start and goal
+           	    if (cell == start) out.write("\t\tstartNode");
+           	    if (cell == goal) out.write("\t\tgoalNode");
+       	    }
+
+           	// Close stream
+           	out.close();
+
+           	// Tell console we wrote path contents to file
+           	System.out.println("Entity #" + entity.getNumber() + ": Path contents written to file 'entityPath-" + entity.getNumber() + ".txt'");
+       	}
+
+       	// Could not write to file
+       	catch (IOException e) {
+       		System.out.println("Could not write to file: entityPath-" + entity.getNumber() + ".txt");
+       	}
+    }
+}
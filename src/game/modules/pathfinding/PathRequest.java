@@ -0,0 +1,102 @@
+package game.modules.pathfinding;
+
+import game.map.Cell;
+import game.map.GridView;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+// One path for the PathService to find. The game thread fills in the start,
+// goal and who wants the result; a worker thread fills in the cells of the
+// path, which are handed back to the finder at the next frame boundary.
+//
+// The waypoints also complete getFuture() (on the game thread): smoothed by
+// the finder, or every cell of the path if there is no finder to smooth them
+// for. A search that throws completes it exceptionally. Cancelling the future
+// stops the search at its next expansion.
+public final class PathRequest
+{
+	final ParallelPathFinder finder;				// Who gets the path (may be null)
+	final Cell start;								// The start cell
+	final Cell goal;								// The goal cell
+	final int unitSize;								// How many cells across the entity is (see GridView.getClearance)
+
+	GridView view = null;							// The snapshot of the map the path is found on
+	int[] cells = null;								// The cell indexes of the path, start first (null = no path)
+	int cost = 0;									// The movement cost of the path
+	int expanded = 0;								// How many cells the search saw
+	RuntimeException error = null;					// What the search threw (null = nothing)
+
+	volatile boolean cancelled = false;				// Whether or not the search should stop
+
+	// The smoothed waypoints, start first (empty if the goal can't be reached)
+	final CompletableFuture<Path> future = new CompletableFuture<Path>();
+
+    // Constructor
+    public PathRequest(ParallelPathFinder finder, Cell start, Cell goal) {
+    	this(finder, start, goal, 1);
+    }
+
+    // Constructor for units unitSize cells across
+    public PathRequest(ParallelPathFinder finder, Cell start, Cell goal, int unitSize)
+    {
+    	this.finder = finder;
+    	this.start = start;
+    	this.goal = goal;
+    	this.unitSize = unitSize;
+
+    	// However the future gets cancelled, tell the search to stop
+    	future.whenComplete(new BiConsumer<Path, Throwable>() {
+    		public void accept(Path path, Throwable error) {
+    			if (future.isCancelled()) cancelled = true;
+    		}
+    	});
+    }
+
+    // Return the future that completes with the smoothed waypoints
+    public CompletableFuture<Path> getFuture() {
+    	return future;
+    }
+
+    // Stop searching for this path
+    public void cancel() {
+    	future.cancel(false);
+    }
+
+    // Whether or not the request was cancelled
+    public boolean isCancelled() {
+    	return cancelled;
+    }
+
+    // Return the start cell
+    public Cell getStart() {
+    	return start;
+    }
+
+    // Return the goal cell
+    public Cell getGoal() {
+    	return goal;
+    }
+
+    // Return how many cells across the entity is
+    public int getUnitSize() {
+    	return unitSize;
+    }
+
+    // Whether or not a path was found (only meaningful once the request is published)
+    public boolean pathFound() {
+    	return (cells != null);
+    }
+
+    // Return how many cells the search saw
+    public int getExpanded() {
+    	return expanded;
+    }
+
+    // Complete the future with path, or with what the search threw if it failed
+    void complete(Path path)
+    {
+    	if (error != null) future.completeExceptionally(error);
+    	else future.complete(path);
+    }
+}
@@ -0,0 +1,110 @@
+package game.modules.pathfinding;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+// Shares a fixed amount of time per frame between every search in the game.
+// Entities hand their PathFinder to add() instead of calling findPath()
+// themselves; once per frame Game.loop calls run(), which goes round-robin
+// over the searches still building a path, giving each a slice of steps
+// until the frame's budget is spent. The next frame picks up where this one
+// stopped, so frame time stays put no matter how many units want paths.
+public final class PathScheduler
+{
+	public static final long BUDGET = 4000000L;		// The default nanoseconds to spend per frame (of ~16.6ms at 60 FPS)
+	public static final int SLICE = 64;				// The default steps a search takes per turn
+
+	// The single scheduler
+	private static PathScheduler scheduler = null;
+
+	// Whether or not entities should hand their searches to the scheduler
+	private static boolean enabled = true;
+
+	private long budget = BUDGET;					// Nanoseconds to spend per frame
+	private int slice = SLICE;						// Steps a search takes per turn
+	private int next = 0;							// Whose turn it is
+
+	private ArrayList<PathFinder> finders = new ArrayList<PathFinder>();	// The searches, in turn order
+	private HashSet<PathFinder> scheduled = new HashSet<PathFinder>();		// The same searches, for quick lookups
+	private HashSet<PathFinder> stalled = new HashSet<PathFinder>();		// Searches that got nowhere this frame
+
+    // Constructor
+    private PathScheduler() {}
+
+    // Return the scheduler
+    public static synchronized PathScheduler get()
+    {
+    	if (scheduler == null) scheduler = new PathScheduler();
+
+    	return scheduler;
+    }
+
+    // Whether or not entities should hand their searches to the scheduler
+    public static boolean isEnabled() {
+    	return enabled;
+    }
+
+    // Turn the scheduler on or off (off = every entity searches in its own doLogic())
+    public static void setEnabled(boolean on) {
+    	enabled = on;
+    }
+
+    // Set the nanoseconds to spend per frame
+    public void setBudget(long nanos) {
+    	budget = Math.max(0, nanos);
+    }
+
+    // Set the steps a search takes per turn
+    public void setSlice(int steps) {
+    	slice = Math.max(1, steps);
+    }
+
+    // Return the number of searches waiting for time
+    public int size() {
+    	return finders.size();
+    }
+
+    // Give a search turns until it has built its path (does nothing if it already has turns)
+    public void add(PathFinder finder)
+    {
+    	if (scheduled.add(finder)) finders.add(finder);
+    }
+
+    // Stop giving a search turns
+    public void remove(PathFinder finder)
+    {
+    	if (scheduled.remove(finder)) finders.remove(finder);
+    }
+
+    // Spend this frame's budget on the searches, round-robin (called once per frame by Game.loop)
+    public void run()
+    {
+    	long end = System.nanoTime() + budget;
+    	PathFinder finder;
+
+    	stalled.clear();
+
+    	// Keep handing out turns until the time is up or nobody can use one
+    	while (!finders.isEmpty() && (stalled.size() < finders.size()) && (System.nanoTime() < end))
+    	{
+    		if (next >= finders.size()) next = 0;
+
+    		finder = finders.get(next);
+
+    		// Done with its path, it doesn't need any more turns
+    		if (!finder.buildingPath())
+    		{
+    			finders.remove(next);
+    			scheduled.remove(finder);
+    			stalled.remove(finder);
+    			continue;
+    		}
+
+    		// Only searches that are still getting somewhere get a turn (one that couldn't
+    		// take a single step, e.g. waiting on a blocked goal, is left until next frame)
+    		if (!stalled.contains(finder) && (finder.findPath(slice) == 0) && finder.buildingPath()) stalled.add(finder);
+
+    		next++;
+    	}
+    }
+}
@@ -0,0 +1,230 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+import game.map.GridView;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Finds paths off the game thread. Requests submitted during a frame are
+// collected into a batch; at the next frame boundary (Game.loop calls frame())
+// the finished results are handed back to their finders and the new batch is
+// split across a ForkJoinPool. Workers only ever read a GridView, so the game
+// thread is free to edit the Grid while they search.
+//
+// request() returns a CompletableFuture of the waypoints instead; cancelling
+// it (or destroying the entity) stops the search at its next expansion.
+public final class PathService
+{
+	// The single service
+	private static PathService service = null;
+
+	private ForkJoinPool pool = null;				// The worker threads (started on first use)
+	private int inFlight = 0;						// Requests handed to the workers but not published yet
+
+	private ArrayList<PathRequest> batch = new ArrayList<PathRequest>();						// Requests waiting for the next frame
+	private ArrayList<PathRequest> active = new ArrayList<PathRequest>();						// Every request not published yet
+	private final ConcurrentLinkedQueue<PathRequest> finished = new ConcurrentLinkedQueue<PathRequest>();	// Solved, waiting to be published
+
+	// Splits a batch of requests in half until each worker has one to solve
+	private final class Batch extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final PathRequest[] requests;
+		private final int from, to;
+
+		Batch(PathRequest[] requests, int from, int to)
+		{
+			this.requests = requests;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute()
+		{
+			// Just one left, solve it (unless it was cancelled while it waited)
+			if (to - from == 1)
+			{
+				try {
+					if (!requests[from].cancelled) solve(requests[from]);
+				}
+
+				// Hand the failure back with the request, the game thread completes its future with it
+				catch (RuntimeException e) {
+					requests[from].error = e;
+				}
+
+				finally {
+					finished.add(requests[from]);
+				}
+
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+
+			invokeAll(new Batch(requests, from, middle), new Batch(requests, middle, to));
+		}
+	}
+
+    // Constructor
+    private PathService() {}
+
+    // Return the service
+    public static synchronized PathService get()
+    {
+    	if (service == null) service = new PathService();
+
+    	return service;
+    }
+
+    // Ask for a path for entity, the future completes with the smoothed waypoints at a frame boundary (game thread only)
+    public CompletableFuture<Path> request(Entity entity, Cell start, Cell goal)
+    {
+    	ParallelPathFinder finder = new ParallelPathFinder(entity);
+    	finder.newPath(start, goal);
+
+    	return finder.getFuture();
+    }
+
+    // Queue a request to be solved from the next frame (game thread only)
+    public void submit(PathRequest request)
+    {
+    	batch.add(request);
+    	active.add(request);
+    }
+
+    // Queue a batch of requests to be solved from the next frame (game thread only)
+    public void submit(Collection<PathRequest> requests)
+    {
+    	batch.addAll(requests);
+    	active.addAll(requests);
+    }
+
+    // Cancel every request still outstanding for entity (game thread only)
+    public void cancel(Entity entity)
+    {
+    	for (PathRequest request : active)
+    		if ((request.finder != null) && (request.finder.entity == entity)) request.cancel();
+    }
+
+    // The frame boundary: publish everything solved since the last frame and send off the new batch (game thread only)
+    public void frame()
+    {
+    	PathRequest request;
+
+    	// Hand back the finished paths
+    	while ((request = finished.poll()) != null)
+    	{
+    		inFlight--;
+
+    		// Nobody wants it anymore
+    		if (request.cancelled) active.remove(request);
+
+    		// The map changed while it was being solved, solve it again on the new map
+    		else if ((request.error == null) && (request.view.getVersion() != Grid.getVersion())) batch.add(request);
+
+    		else
+    		{
+    			active.remove(request);
+
+    			// Nobody to smooth it for, the future gets every cell of the path
+    			if (request.finder != null) request.finder.receive(request);
+    			else request.complete((request.cells == null) ? Path.EMPTY : new Path(request.cells, request.cost));
+    		}
+    	}
+
+    	dispatch();
+    }
+
+    // Return the number of requests that haven't been published yet
+    public int getPending() {
+    	return batch.size() + inFlight;
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Send the waiting batch to the workers
+    private void dispatch()
+    {
+    	// Drop anything cancelled before it was sent
+    	for (int i = batch.size() - 1; i >= 0; i--)
+    	{
+    		if (batch.get(i).cancelled) active.remove(batch.remove(i));
+    	}
+
+    	if (batch.isEmpty()) return;
+
+    	// Leave a core for the game thread
+    	if (pool == null) pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+    	GridView view = Grid.getView();
+    	PathRequest[] requests = batch.toArray(new PathRequest[batch.size()]);
+
+    	for (PathRequest request : requests) request.view = view;
+
+    	batch.clear();
+    	inFlight += requests.length;
+
+    	pool.execute(new Batch(requests, 0, requests.length));
+    }
+
+    // A* over the request's GridView (runs on a worker thread)
+    private static void solve(PathRequest request)
+    {
+    	GridView view = request.view;
+    	Workspace workspace = Workspace.acquire(view.getSize());
+    	ArraySearch search = new ArraySearch();
+
+    	int start = view.indexOf(request.start.getR(), request.start.getC());
+    	int goal = view.indexOf(request.goal.getR(), request.goal.getC());
+    	int current;
+
+    	request.cells = null;
+    	request.cost = 0;
+    	request.expanded = 0;
+
+    	try
+    	{
+    		search.start(view, workspace, start, goal, request.unitSize);
+
+    		// Keep going until we run out of cells or the request is cancelled
+    		while (!request.cancelled && ((current = search.step()) >= 0))
+    		{
+    			// Found the goal, read the path back out
+    			if (current == goal)
+    			{
+    				int[] parent = workspace.parent;
+    				int length = 0;
+
+    				for (int index = goal; index >= 0; index = parent[index]) length++;
+
+    				request.cells = new int[length];
+    				request.cost = workspace.g[goal];
+
+    				for (int index = goal; index >= 0; index = parent[index]) request.cells[--length] = index;
+
+    				break;
+    			}
+    		}
+
+    		request.expanded = search.getExpanded();
+    	}
+
+    	// Hand the workspace back even if the search threw
+    	finally {
+    		Workspace.release(workspace);
+    	}
+    }
+}
@@ -0,0 +1,232 @@
+package game.modules.pathfinding;
+
+import game.map.Grid;
+
+import java.util.Arrays;
+
+// The shared space-time reservation table for cooperative pathfinding (see
+// CooperativeAStar). Each slot says who will be standing on a cell during one
+// tick of the game clock, so the next entity to plan routes around everyone
+// who planned before it instead of walking through them.
+//
+// Slots live in an open addressing hash table keyed by (tick, cell), so the
+// table only ever holds the slots actually reserved (about one per entity per
+// tick of its window), however big the map or long the game. Looking a slot up
+// or taking it is O(1), which keeps hundreds of planners from costing more
+// than the sum of their own searches.
+public final class Reservations
+{
+	// The default length of a tick (long enough to walk one cell diagonally at alien speed)
+	public static final long TICK = 400000000L;
+
+	// The owner of a slot nobody has reserved
+	public static final int FREE = -1;
+
+	// A key that can't be a real slot (ticks and cells are never negative)
+	private static final long EMPTY = -1L;
+
+	// The single table
+	private static Reservations reservations = null;
+
+	private long[] keys = new long[1024];			// The (tick, cell) of each slot (EMPTY = unused)
+	private int[] owners = new int[1024];			// Who reserved each slot
+	private int mask = 1023;						// keys.length - 1
+	private int size = 0;							// The number of slots reserved
+
+	private Object builtFor = null;					// The Grid cell list our cell indexes belong to
+	private int ids = 0;							// The number of owner ids handed out
+
+	private long tickLength = TICK;					// How many nanoseconds a tick lasts
+	private long elapsed = 0;						// How far into the current tick we are
+	private int now = 0;							// The current tick
+
+    // Constructor
+    private Reservations() {
+    	Arrays.fill(keys, EMPTY);
+    }
+
+    // Return the reservation table
+    public static synchronized Reservations get()
+    {
+    	if (reservations == null) reservations = new Reservations();
+
+    	return reservations;
+    }
+
+    // Hand out an id for a new planner to reserve slots under
+    public int newOwner() {
+    	return ids++;
+    }
+
+    // Return the current tick
+    public int now() {
+    	return now;
+    }
+
+    // Return how many nanoseconds a tick lasts
+    public long getTickLength() {
+    	return tickLength;
+    }
+
+    // Change how many nanoseconds a tick lasts (entities should be able to walk one cell diagonally in a tick)
+    public void setTickLength(long nanos) {
+    	tickLength = Math.max(1, nanos);
+    }
+
+    // Move the clock on by delta nanoseconds (Game.loop calls this once a frame)
+    public void advance(long delta)
+    {
+    	elapsed += delta;
+
+    	while (elapsed >= tickLength)
+    	{
+    		elapsed -= tickLength;
+    		now++;
+    	}
+    }
+
+    // Return who has cell index reserved during tick (or FREE)
+    public int owner(int cell, int tick)
+    {
+    	update();
+
+    	int slot = find(key(cell, tick));
+
+    	return ((keys[slot] == EMPTY) ? FREE : owners[slot]);
+    }
+
+    // Whether or not cell index is free for owner during tick (nobody else has it)
+    public boolean isFree(int cell, int tick, int owner)
+    {
+    	int holder = owner(cell, tick);
+
+    	return ((holder == FREE) || (holder == owner));
+    }
+
+    // Reserve cell index during tick for owner, returns false if someone else already has it
+    public boolean reserve(int cell, int tick, int owner)
+    {
+    	update();
+
+    	long key = key(cell, tick);
+    	int slot = find(key);
+
+    	// Already taken
+    	if (keys[slot] != EMPTY) return (owners[slot] == owner);
+
+    	keys[slot] = key;
+    	owners[slot] = owner;
+
+    	// Keep the table at most half full so probes stay short
+    	if (++size > (mask >> 1)) grow();
+
+    	return true;
+    }
+
+    // Give up cell index during tick, if owner has it
+    public void release(int cell, int tick, int owner)
+    {
+    	update();
+
+    	int slot = find(key(cell, tick));
+
+    	if ((keys[slot] == EMPTY) || (owners[slot] != owner)) return;
+
+    	remove(slot);
+    }
+
+    // Return the number of slots reserved
+    public int size() {
+    	return size;
+    }
+
+    // Forget every reservation
+    public void clear()
+    {
+    	Arrays.fill(keys, EMPTY);
+    	size = 0;
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // The key for cell index during tick
+    private static long key(int cell, int tick) {
+    	return (((long) tick) << 32) | cell;
+    }
+
+    // Return the slot holding key, or the empty slot it would go in
+    private int find(long key)
+    {
+    	int slot = hash(key);
+
+    	while ((keys[slot] != EMPTY) && (keys[slot] != key)) slot = (slot + 1) & mask;
+
+    	return slot;
+    }
+
+    // The first slot to look for key in
+    private int hash(long key) {
+    	return ((int) ((key * 0x9E3779B97F4A7C15L) >>> 32)) & mask;
+    }
+
+    // Empty slot, shifting back any later slots that can no longer be found past the gap
+    private void remove(int slot)
+    {
+    	int gap = slot, next = slot, home;
+
+    	while (true)
+    	{
+    		next = (next + 1) & mask;
+
+    		if (keys[next] == EMPTY) break;
+
+    		home = hash(keys[next]);
+
+    		// Leave it if its home lies between the gap and where it is now
+    		if (((next - home) & mask) < ((next - gap) & mask)) continue;
+
+    		keys[gap] = keys[next];
+    		owners[gap] = owners[next];
+    		gap = next;
+    	}
+
+    	keys[gap] = EMPTY;
+    	size--;
+    }
+
+    // Double the table, re-filing every slot
+    private void grow()
+    {
+    	long[] oldKeys = keys;
+    	int[] oldOwners = owners;
+    	int slot;
+
+    	keys = new long[oldKeys.length * 2];
+    	owners = new int[oldKeys.length * 2];
+    	mask = keys.length - 1;
+
+    	Arrays.fill(keys, EMPTY);
+
+    	for (int i = 0; i < oldKeys.length; i++)
+    	{
+    		if (oldKeys[i] == EMPTY) continue;
+
+    		slot = find(oldKeys[i]);
+    		keys[slot] = oldKeys[i];
+    		owners[slot] = oldOwners[i];
+    	}
+    }
+
+    // Drop every reservation if a new map was loaded (our cell indexes belong to the old one)
+    private void update()
+    {
+    	if (builtFor == Grid.getCells()) return;
+
+    	clear();
+    	builtFor = Grid.getCells();
+    }
+}
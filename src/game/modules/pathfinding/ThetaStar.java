@@ -0,0 +1,286 @@
+package game.modules.pathfinding;
+
+import game.entities.Entity;
+import game.map.Cell;
+import game.map.Grid;
+
+// Theta*: any-angle A*. When a cell is reached, it may take its parent's parent
+// as its own parent if the entity can walk straight there (see walkable), so
+// parents are already the corners of the path and nothing needs smoothing
+// afterwards. Costs are straight-line distances, scaled like STRAIGHT.
+//
+// The lazy version (Lazy Theta*) assumes the shortcut is fine when a cell is
+// reached, and only checks it once the cell comes off the open list, falling
+// back to the best closed neighbor if it isn't. Most cells reached are never
+// expanded, so most of the line-of-sight checks are never made.
+public final class ThetaStar extends PathFinder
+{
+	// Cell states (cells not yet seen by this search aren't visited in the Workspace)
+	private static final byte OPEN		= 1;		// On the open list
+	private static final byte CLOSED	= 2;		// Already expanded
+
+	private boolean lazy;							// Whether to put off line-of-sight checks (Lazy Theta*)
+
+	private int start = -1;							// The start cell index
+	private int goal = -1;							// The goal cell index
+	private int checks = 0;							// How many line-of-sight checks we have made
+
+	private Workspace workspace = null;				// Our search arrays, reused between searches
+
+	private int[] g = null;							// G() for each cell
+	private int[] f = null;							// F() for each cell (the open list is sorted by this)
+	private int[] parent = null;					// The parent index of each cell (-1 = none)
+	private byte[] state = null;					// OPEN or CLOSED for each visited cell
+
+	private IntHeap openList = null;				// Stores cell indexes we have to check out
+
+    // Constructor, lazy picks Lazy Theta* over Theta*
+    public ThetaStar(Entity entity, boolean lazy)
+    {
+    	super(entity);
+
+    	this.lazy = lazy;
+    }
+
+    // Re-calculates the path with new start and goal cells
+    public void newPath(Cell start, Cell goal)
+    {
+    	// Initialize arrays
+    	initialize();
+
+    	// Set our new starting point and goal point
+    	this.start = Grid.indexOf(start.getR(), start.getC());
+    	this.goal = Grid.indexOf(goal.getR(), goal.getC());
+
+    	// Don't bother searching if the goal can't be reached
+    	if (rejectUnreachable(this.start, this.goal))
+    	{
+    		cleanUp();
+    		return;
+    	}
+
+    	// Add the start cell to the openList
+    	workspace.visit(this.start);
+    	g[this.start] = 0;
+    	f[this.start] = distance(this.start, this.goal);
+    	parent[this.start] = -1;
+    	state[this.start] = OPEN;
+    	openList.push(this.start);
+    }
+
+    // Calculating the best path based on the start and goal cells given to newPath()
+    public void findPath()
+    {
+    	// Make sure we have starting and ending points and that we don't already have a path
+        if (!needPath || start < 0 || goal < 0) return;
+
+        int steps = 0;						// Used to count the number of steps taken per method call
+        int mask;							// The playable cells around current
+        int current = -1, neighbor;			// The cell we are working on and its neighbor
+
+        // Loop through all possible cells and find the best path to the goal
+        while (openList.size() > 0)
+        {
+        	// Set our current cell to the one with the lowest totalCost
+        	current = openList.pop();
+        	state[current] = CLOSED;
+
+        	// Make sure the shortcut we assumed to get here really is walkable
+        	if (lazy) setVertex(current);
+
+        	// If we have found the goal, we no longer need a path
+        	if (current == goal) foundGoal();
+
+        	// Otherwise, continue to search for next best move
+        	else
+        	{
+        		// Go through the playable cells around us (one bit each)
+        		for (mask = Grid.getNeighborMask(current); mask != 0; mask &= (mask - 1))
+        		{
+        			neighbor = current + Grid.getNeighborOffset(Integer.numberOfTrailingZeros(mask));
+
+        			// Already expanded, nothing to gain
+        			if (workspace.isVisited(neighbor) && (state[neighbor] == CLOSED)) continue;
+
+        			// First time we have seen this cell
+        			if (!workspace.isVisited(neighbor))
+        			{
+        				workspace.visit(neighbor);
+        				g[neighbor] = Integer.MAX_VALUE;
+        				expanded++;
+        			}
+
+        			updateVertex(current, neighbor);
+        		}
+
+        		// Increase steps taken on this loop
+        		steps++;
+        	}
+
+            // If we are finished or have reached our limit for this loop, build best path to this point and exit
+            if (!needPath || reachedLimit(steps))
+            {
+            	path = tracePath(current);
+            	break;
+            }
+        }
+
+        // Entity is unable to move to goal (path blocked), there is nothing left to search
+        if (needPath && openList.size() == 0)
+        {
+        	noPath();
+        	needPath = false;
+        	cleanUp();
+        	return;
+        }
+
+        // Path is complete
+        if (!needPath)
+        {
+        	// DEBUG - write final path to file
+        	writePath(Grid.getCell(start), Grid.getCell(goal));
+
+        	// If we are done, clean up
+        	cleanUp();
+        }
+    }
+
+    // For testing
+    public int getLineChecks() {
+    	return checks;
+    }
+
+    // Hand our workspace back if we are dropped mid-search
+    public void dispose() {
+    	cleanUp();
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // The straight-line cost between two cell indexes
+    private static int distance(int from, int to)
+    {
+    	int dr = Grid.rowFromIndex(from) - Grid.rowFromIndex(to);
+    	int dc = Grid.columnFromIndex(from) - Grid.columnFromIndex(to);
+
+    	return (int) Math.round(STRAIGHT * Math.sqrt((dr * dr) + (dc * dc)));
+    }
+
+    // Whether or not the entity can walk straight from one cell index to another
+    private boolean lineOfSight(int from, int to)
+    {
+    	checks++;
+
+    	return walkable(Grid.getCell(from), Grid.getCell(to));
+    }
+
+    // Reach neighbor from current, going straight from current's parent if we can
+    private void updateVertex(int current, int neighbor)
+    {
+    	int from = current, movementCost;
+
+    	// Theta* checks the shortcut now, Lazy Theta* takes it on trust until neighbor is expanded
+    	if ((parent[current] >= 0) && (lazy || lineOfSight(parent[current], neighbor))) from = parent[current];
+
+    	movementCost = g[from] + distance(from, neighbor);
+
+    	// Only update it if this move is better
+    	if (movementCost >= g[neighbor]) return;
+
+    	// Store the new costs and parent
+    	f[neighbor] = movementCost + distance(neighbor, goal);
+    	g[neighbor] = movementCost;
+    	parent[neighbor] = from;
+
+    	// Lower it in place if it's open, otherwise open it
+    	if (state[neighbor] == OPEN) openList.decreaseKey(neighbor);
+    	else
+    	{
+    		state[neighbor] = OPEN;
+    		openList.push(neighbor);
+    	}
+    }
+
+    // Lazy Theta*: current was given its parent's parent without checking, so check now,
+    // and if we can't walk straight there go through the best expanded cell around us instead
+    private void setVertex(int current)
+    {
+    	int from = parent[current], neighbor, movementCost;
+
+    	if ((from < 0) || lineOfSight(from, current)) return;
+
+    	g[current] = Integer.MAX_VALUE;
+
+    	for (int mask = Grid.getNeighborMask(current); mask != 0; mask &= (mask - 1))
+    	{
+    		neighbor = current + Grid.getNeighborOffset(Integer.numberOfTrailingZeros(mask));
+
+    		if (!workspace.isVisited(neighbor) || (state[neighbor] != CLOSED)) continue;
+
+    		movementCost = g[neighbor] + distance(neighbor, current);
+
+    		if (movementCost < g[current])
+    		{
+    			g[current] = movementCost;
+    			parent[current] = neighbor;
+    		}
+    	}
+    }
+
+    // Build the path up to cell index from, the parents are already its corners so there is nothing to smooth
+    private Path tracePath(int from)
+    {
+    	int length = 0, current;
+
+    	for (current = from; current >= 0; current = parent[current]) length++;
+
+    	// Fill the waypoints in from the back, since we walk from the end of the path to its start
+    	int[] waypoints = new int[length];
+
+    	for (current = from; current >= 0; current = parent[current])
+    		waypoints[--length] = current;
+
+    	return new Path(waypoints, g[from]);
+    }
+
+    // Perform clean-up operations when the final path is built
+    private void cleanUp()
+    {
+    	// Hand our workspace back to the pool
+    	Workspace.release(workspace);
+
+    	workspace = null;
+    	openList = null;
+    	g = f = parent = null;
+    	state = null;
+
+    	// Forget the start and goal so findPath() does nothing until newPath()
+    	start = goal = -1;
+    }
+
+    // Initialize pathFinder arrays
+    private void initialize()
+    {
+	    // Reuse our workspace if we still have one, otherwise grab one from the pool
+    	if ((workspace == null) || (workspace.size() != Grid.getSize())) workspace = Workspace.acquire();
+    	else workspace.reset();
+
+    	g = workspace.g;
+    	f = workspace.f;
+    	parent = workspace.parent;
+    	state = workspace.state;
+    	openList = workspace.intHeap;
+
+    	path = Path.EMPTY;
+
+    	// Initialize variables
+    	expanded = 0;
+    	checks = 0;
+    	needPath = true;
+    	isFinished = false;
+    }
+}
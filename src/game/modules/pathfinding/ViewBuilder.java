@@ -0,0 +1,81 @@
+package game.modules.pathfinding;
+
+import game.map.Grid;
+import game.map.GridView;
+
+// Builds something for the newest map on a single background thread. Each
+// view asked for replaces whichever one was still waiting, so a burst of map
+// changes only builds for the last of them, and the thread stops once there
+// is nothing left waiting. Subclasses say how to build for a view and call
+// done() once it is; the tables themselves are theirs to keep.
+abstract class ViewBuilder
+{
+	private final String name;						// What to call the thread
+
+	private volatile int building = -1;				// The newest map version asked for (-1 = nothing building)
+	private volatile GridView pending = null;		// The map waiting for the thread (null = none)
+	private Thread thread = null;					// The thread building (null = not running)
+
+    // Constructor
+    ViewBuilder(String name) {
+    	this.name = name;
+    }
+
+    // Build for view (runs on the builder thread)
+    protected abstract void build(GridView view);
+
+    // Queue a build for the current map, unless one is already on its way (game thread only)
+    void update() {
+    	if (building != Grid.getVersion()) queue(Grid.getView());
+    }
+
+    // Queue view for the thread, starting it if it isn't running (a view still waiting is dropped)
+    synchronized void queue(GridView view)
+    {
+    	building = view.getVersion();
+    	pending = view;
+
+    	// The thread picks it up when it's done with the one it's on
+    	if (thread != null) return;
+
+    	thread = new Thread(new Runnable() {
+    		public void run()
+    		{
+    			GridView next;
+
+    			while ((next = next()) != null) build(next);
+    		}
+    	}, name);
+
+    	thread.setDaemon(true);
+    	thread.start();
+    }
+
+    // Whether or not a newer map is waiting, so whatever is being built will never be used
+    boolean isStale() {
+    	return (pending != null);
+    }
+
+    // The build for view is done, a newer map can be queued again by update()
+    synchronized void done(GridView view) {
+    	if (building == view.getVersion()) building = -1;
+    }
+
+	/**
+	 *
+	 * Private Functions
+	 *
+	 **/
+
+    // Hand the thread the newest map waiting, or null (stopping it) if there is none
+    private synchronized GridView next()
+    {
+    	GridView next = pending;
+
+    	pending = null;
+
+    	if (next == null) thread = null;
+
+    	return next;
+    }
+}
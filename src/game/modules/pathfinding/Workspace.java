@@ -0,0 +1,140 @@
+package game.modules.pathfinding;
+
+import game.map.Cell;
+import game.map.Grid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Search state sized to the Grid that is kept between searches. Instead of
+// clearing its arrays, reset() bumps a generation counter; any cell whose stamp
+// doesn't match the current generation counts as unvisited. Starting a new
+// search therefore costs the same no matter how large the map is.
+//
+// Workspaces are pooled per thread: acquire() one in newPath() and release()
+// it once the path is finished.
+public final class Workspace
+{
+	// The pool of free workspaces for each thread
+	private static final ThreadLocal<ArrayList<Workspace>> pool = new ThreadLocal<ArrayList<Workspace>>() {
+		protected ArrayList<Workspace> initialValue() {
+			return new ArrayList<Workspace>();
+		}
+	};
+
+	private int size;							// The number of cells this workspace covers
+	private int generation = 1;					// The current search (stamps equal to this are visited)
+	private int[] stamp;						// The search each cell was last visited by
+
+	final int[] g;								// G() for each cell
+	final int[] f;								// F() for each cell
+	final int[] parent;							// The parent index of each cell (-1 = none)
+	final byte[] state;							// Engine specific state for each cell
+
+	final IntHeap intHeap;						// Open list of cell indexes, sorted by f
+	final BucketQueue openList;					// Open list of Nodes, bucketed by totalCost
+	final Heap closedList;						// Closed list of Nodes
+
+	private Node[] nodes;						// The Node kept for each cell (created on first use)
+
+    // Constructor, size is the number of cells in the grid
+    public Workspace(int size)
+    {
+    	this.size = size;
+
+    	stamp = new int[size];
+    	g = new int[size];
+    	f = new int[size];
+    	parent = new int[size];
+    	state = new byte[size];
+    	nodes = new Node[size];
+
+    	intHeap = new IntHeap(size, f);
+    	openList = new BucketQueue();
+    	closedList = new Heap();
+    }
+
+    // Grab a workspace for the current Grid from this thread's pool
+    public static Workspace acquire() {
+    	return acquire(Grid.getSize());
+    }
+
+    // Grab a workspace covering size cells from this thread's pool
+    public static Workspace acquire(int size)
+    {
+    	ArrayList<Workspace> free = pool.get();
+
+    	// Look for a free workspace of the right size
+    	while (!free.isEmpty())
+    	{
+    		Workspace workspace = free.remove(free.size() - 1);
+
+    		if (workspace.size() == size)
+    		{
+    			workspace.reset();
+    			return workspace;
+    		}
+    	}
+
+    	// None left (or the map changed size), make a new one
+    	return new Workspace(size);
+    }
+
+    // Hand a workspace back to this thread's pool
+    public static void release(Workspace workspace)
+    {
+    	if (workspace != null) pool.get().add(workspace);
+    }
+
+    // The number of cells this workspace covers
+    public int size() {
+    	return size;
+    }
+
+    // Start a new search, forgetting everything from the last one in O(1)
+    public void reset()
+    {
+    	// Generation wrapped around, clear the stamps the slow way
+    	if (++generation == Integer.MAX_VALUE)
+    	{
+    		Arrays.fill(stamp, 0);
+    		generation = 1;
+    	}
+
+    	intHeap.clear();
+    	openList.clear();
+    	closedList.clear();
+    }
+
+    // Whether or not cell index has been visited by the current search
+    public boolean isVisited(int index) {
+    	return (stamp[index] == generation);
+    }
+
+    // Mark cell index as visited by the current search
+    public void visit(int index)
+    {
+    	stamp[index] = generation;
+    	state[index] = 0;
+    }
+
+    // Return the Node for cell index (or null if the current search hasn't visited it)
+    public Node getNode(int index) {
+    	return (isVisited(index) ? nodes[index] : null);
+    }
+
+    // Visit cell index and return a fresh Node for it
+    public Node newNode(int index)
+    {
+    	Cell cell = Grid.getCell(index);
+    	Node node = nodes[index];
+
+    	// Reuse the Node from an earlier search if it is for the same Cell
+    	if ((node == null) || (node.getCell() != cell)) node = nodes[index] = new Node(cell);
+    	else node.reset();
+
+    	visit(index);
+
+    	return node;
+    }
+}